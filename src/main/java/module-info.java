@@ -16,5 +16,6 @@ module uk.ac.soton.comp1206 {
     exports uk.ac.soton.comp1206.scene;
     exports uk.ac.soton.comp1206.event;
     exports uk.ac.soton.comp1206.component;
+    exports uk.ac.soton.comp1206.ai;
     exports uk.ac.soton.comp1206.game;
 }
\ No newline at end of file
@@ -0,0 +1,722 @@
+package uk.ac.soton.comp1206;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import uk.ac.soton.comp1206.ai.ExpectimaxSearch;
+import uk.ac.soton.comp1206.ai.Heuristic;
+import uk.ac.soton.comp1206.ai.Move;
+import uk.ac.soton.comp1206.ai.PlacementSearch;
+import uk.ac.soton.comp1206.ai.TranspositionTable;
+import uk.ac.soton.comp1206.game.Action;
+import uk.ac.soton.comp1206.game.ActionResult;
+import uk.ac.soton.comp1206.game.AdaptivePieceGenerator;
+import uk.ac.soton.comp1206.game.BagPieceGenerator;
+import uk.ac.soton.comp1206.game.GameEngine;
+import uk.ac.soton.comp1206.game.GamePiece;
+import uk.ac.soton.comp1206.game.Grid;
+import uk.ac.soton.comp1206.game.PieceGenerator;
+import uk.ac.soton.comp1206.game.Seeds;
+import uk.ac.soton.comp1206.game.UniformPieceGenerator;
+import uk.ac.soton.comp1206.game.WeightedPieceGenerator;
+
+/**
+ * Plays large numbers of games without a window, so the game loop timing, scoring and piece weights can be tuned
+ * from data.
+ *
+ * Each worker thread owns its own engine, simulated clock, piece generator and bot, so nothing is shared while games
+ * are played except the counter handing out game numbers. Every game is seeded from the run's seed and its number,
+ * so a run with the random or greedy bot can be repeated exactly. When every game is done, the distributions of
+ * score, level, game length, lines cleared and game time are written to a CSV file as histograms, one row per
+ * non-empty bucket.
+ *
+ * Before the run, a single worker plays for a short while, after warming up, to measure the rate one core manages.
+ * The target for the run is that rate times the number of workers, and the share of the target reached is reported at
+ * the end.
+ */
+public class Simulator {
+
+    private static final Logger logger = LogManager.getLogger(Simulator.class);
+
+    /**
+     * How to run the simulator
+     */
+    private static final String USAGE = "Usage: Simulator [--games N] [--workers N] "
+        + "[--policy random|greedy|expectimax] [--pieces uniform|bag|adaptive|weighted:w1,w2,...] [--seed S] "
+        + "[--think-ms T] [--size N] [--budget-ms T] [--score-bucket N] [--out FILE] [--no-calibrate]";
+
+    /**
+     * The number of games played when none is given
+     */
+    public static final long DEFAULT_GAMES = 1_000_000;
+
+    /**
+     * The number of games a worker claims at a time
+     */
+    private static final int CHUNK = 64;
+
+    /**
+     * Time between progress reports, in nanoseconds
+     */
+    private static final long REPORT_INTERVAL = 5_000_000_000L;
+
+    /**
+     * Time the single worker plays for to measure the rate of one core, in nanoseconds. It plays for as long again
+     * beforehand, so the code is compiled before it is measured.
+     */
+    private static final long CALIBRATION_TIME = 1_000_000_000L;
+
+    /**
+     * Size of the transposition table of each expectimax worker, in megabytes. Each worker searches one move at a
+     * time for a few milliseconds, so a small table is enough.
+     */
+    private static final int SEARCH_TABLE_MB = 2;
+
+    /**
+     * Step between the seeds of consecutive games
+     */
+    private static final long SEED_STEP = 0x9E3779B97F4A7C15L;
+
+    /**
+     * The number of games to play
+     */
+    private long games = DEFAULT_GAMES;
+
+    /**
+     * The number of worker threads
+     */
+    private int workers = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * The bot playing the games
+     */
+    private String policy = "random";
+
+    /**
+     * Makes a piece generator for each worker
+     */
+    private Supplier<PieceGenerator> pieces = UniformPieceGenerator::new;
+
+    /**
+     * The seed the seed of each game is worked out from
+     */
+    private long seed = Seeds.random();
+
+    /**
+     * Mean time the bot takes over each move, in milliseconds
+     */
+    private double thinkMs = 1000;
+
+    /**
+     * Width and height of the grid
+     */
+    private int size = 5;
+
+    /**
+     * Time the expectimax bot searches each move for, in nanoseconds
+     */
+    private long budget = ExpectimaxSearch.HINT_BUDGET;
+
+    /**
+     * Width of the score histogram buckets
+     */
+    private int scoreBucket = 100;
+
+    /**
+     * File the histograms are written to
+     */
+    private Path out = Path.of("simulation.csv");
+
+    /**
+     * Whether to measure the rate of one core before the run
+     */
+    private boolean calibrate = true;
+
+    /**
+     * Run the simulator
+     * @param args commandline arguments, see USAGE
+     * @throws InterruptedException if interrupted while waiting for the workers
+     */
+    public static void main(String[] args) throws InterruptedException {
+        Simulator simulator;
+        try {
+            simulator = new Simulator(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+            return;
+        }
+        try {
+            simulator.run();
+        } catch (IOException e) {
+            logger.error("Unable to write results: " + e);
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Create a simulator from commandline arguments
+     * @param args commandline arguments, see USAGE
+     */
+    public Simulator(String[] args) {
+        for(int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if(arg.equals("--no-calibrate")) {
+                calibrate = false;
+                continue;
+            }
+            if(i + 1 == args.length) {
+                throw new IllegalArgumentException("Unknown option or missing value: " + arg);
+            }
+            String value = args[++i];
+            switch (arg) {
+                case "--games" -> games = positive(arg, Long.parseLong(value));
+                case "--workers" -> workers = (int) positive(arg, Integer.parseInt(value));
+                case "--policy" -> policy = value;
+                case "--pieces" -> pieces = generators(value);
+                case "--seed" -> seed = Long.parseLong(value);
+                case "--think-ms" -> thinkMs = Double.parseDouble(value);
+                case "--size" -> size = (int) positive(arg, Integer.parseInt(value));
+                case "--budget-ms" -> budget = positive(arg, Long.parseLong(value)) * 1_000_000L;
+                case "--score-bucket" -> scoreBucket = (int) positive(arg, Integer.parseInt(value));
+                case "--out" -> out = Path.of(value);
+                default -> throw new IllegalArgumentException("Unknown option: " + arg);
+            }
+        }
+        if(!policy.equals("random") && !policy.equals("greedy") && !policy.equals("expectimax")) {
+            throw new IllegalArgumentException("Unknown policy: " + policy);
+        }
+        if(size > Grid.MAX_SIZE) {
+            throw new IllegalArgumentException("Grid size must be at most " + Grid.MAX_SIZE + ": " + size);
+        }
+        pieces.get();
+    }
+
+    /**
+     * Check an option is positive
+     * @param option the option
+     * @param value its value
+     * @return the value
+     */
+    private static long positive(String option, long value) {
+        if(value < 1) {
+            throw new IllegalArgumentException(option + " must be at least 1: " + value);
+        }
+        return value;
+    }
+
+    /**
+     * Work out which piece generator to use
+     * @param name uniform, bag, adaptive, or weighted: followed by a comma separated weight for each piece
+     * @return makes a new generator each time it is called
+     */
+    private static Supplier<PieceGenerator> generators(String name) {
+        if(name.startsWith("weighted:")) {
+            double[] weights = Arrays.stream(name.substring("weighted:".length()).split(","))
+                .mapToDouble(Double::parseDouble).toArray();
+            return () -> new WeightedPieceGenerator(weights);
+        }
+        return switch (name) {
+            case "uniform" -> UniformPieceGenerator::new;
+            case "bag" -> BagPieceGenerator::new;
+            case "adaptive" -> AdaptivePieceGenerator::new;
+            default -> throw new IllegalArgumentException("Unknown piece generator: " + name);
+        };
+    }
+
+    /**
+     * Play every game and write out the results
+     * @throws IOException if the results could not be written
+     * @throws InterruptedException if interrupted while waiting for the workers
+     */
+    public void run() throws IOException, InterruptedException {
+        logger.info("Simulating {} games on {} worker threads: policy {}, {}x{} grid, think time {} ms, seed {}", games,
+            workers, policy, size, size, thinkMs, seed);
+
+        double target = 0;
+        if(calibrate) {
+            play(Long.MAX_VALUE, 1, System.nanoTime() + CALIBRATION_TIME, false);
+            Run baseline = play(Long.MAX_VALUE, 1, System.nanoTime() + CALIBRATION_TIME, false);
+            target = baseline.rate() * workers;
+            logger.info("One worker plays {} games/s, target for {} worker threads is {} games/s",
+                String.format("%.0f", baseline.rate()), workers, String.format("%.0f", target));
+        }
+
+        Run run = play(games, workers, Long.MAX_VALUE, true);
+        logger.info("Played {} games in {} s: {} games/s", run.games, String.format("%.1f", run.nanos / 1e9),
+            String.format("%.0f", run.rate()));
+        if(target > 0) {
+            logger.info("Reached {}% of the target", String.format("%.0f", run.rate() / target * 100));
+        }
+        logger.info("Means: {}", run.stats.means());
+
+        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(out))) {
+            run.stats.write(writer);
+        }
+        logger.info("Histograms written to {}", out.toAbsolutePath());
+    }
+
+    /**
+     * Play games on a number of workers, each playing its own share until they run out or time is up
+     * @param games the number of games to play
+     * @param workers the number of worker threads
+     * @param stopAt System.nanoTime() after which no more games are started
+     * @param report whether to log progress
+     * @return the games played and their results
+     * @throws InterruptedException if interrupted while waiting for the workers
+     */
+    private Run play(long games, int workers, long stopAt, boolean report) throws InterruptedException {
+        AtomicLong next = new AtomicLong();
+        AtomicLong done = new AtomicLong();
+        Worker[] pool = new Worker[workers];
+        Thread[] threads = new Thread[workers];
+        long started = System.nanoTime();
+        for(int i = 0; i < workers; i++) {
+            pool[i] = new Worker(games, stopAt, next, done);
+            threads[i] = new Thread(pool[i], "simulator-" + i);
+            threads[i].start();
+        }
+
+        long nextReport = started + REPORT_INTERVAL;
+        try {
+            for(Thread thread : threads) {
+                while(thread.isAlive()) {
+                    long wait = nextReport - System.nanoTime();
+                    if(wait > 0) {
+                        thread.join(wait / 1_000_000 + 1);
+                        continue;
+                    }
+                    if(report) {
+                        long played = done.get();
+                        logger.info("{} of {} games played, {} games/s", played, games,
+                            String.format("%.0f", played / ((System.nanoTime() - started) / 1e9)));
+                    }
+                    nextReport += REPORT_INTERVAL;
+                }
+            }
+        } finally {
+            for(Worker worker : pool) {
+                worker.close();
+            }
+        }
+        long nanos = System.nanoTime() - started;
+
+        Stats stats = new Stats(scoreBucket);
+        for(Worker worker : pool) {
+            if(worker.failure != null) {
+                throw new IllegalStateException("Worker failed", worker.failure);
+            }
+            stats.merge(worker.stats);
+        }
+        return new Run(stats, done.get(), nanos);
+    }
+
+    /**
+     * The outcome of playing a batch of games
+     * @param stats the results of every game
+     * @param games the number of games played
+     * @param nanos the time taken, in nanoseconds
+     */
+    private record Run(Stats stats, long games, long nanos) {
+
+        /**
+         * Get the rate games were played at
+         * @return games per second
+         */
+        double rate() {
+            return games / (nanos / 1e9);
+        }
+
+    }
+
+    /**
+     * Chooses each move of a game
+     */
+    private interface Policy {
+
+        /**
+         * Choose a move
+         * @param engine the game
+         * @param random source of randomness, seeded from the game
+         * @return the move, or null if no piece can be placed
+         */
+        Move choose(GameEngine engine, SplittableRandom random);
+
+    }
+
+    /**
+     * Make the bot for one worker
+     * @param searchPool the pool the expectimax bot searches on, or null for the other bots
+     * @return the bot
+     */
+    private Policy policy(ForkJoinPool searchPool) {
+        switch (policy) {
+            case "greedy": {
+                PlacementSearch search = new PlacementSearch();
+                return (engine, random) -> search.searchHere(engine.snapshot());
+            }
+            case "expectimax": {
+                ExpectimaxSearch search = new ExpectimaxSearch(searchPool, Heuristic.DEFAULT, budget,
+                    ExpectimaxSearch.DEFAULT_BEAM, new TranspositionTable(SEARCH_TABLE_MB));
+                return (engine, random) -> search.analyse(engine.snapshot()).move();
+            }
+            default:
+                return Simulator::randomMove;
+        }
+    }
+
+    /**
+     * Choose a legal move at random, every swap, rotation and position being equally likely
+     * @param engine the game
+     * @param random source of randomness
+     * @return the move, or null if no piece can be placed
+     */
+    private static Move randomMove(GameEngine engine, SplittableRandom random) {
+        Grid grid = engine.getGrid();
+        Move chosen = null;
+        int seen = 0;
+        for(int swap = 0; swap < 2; swap++) {
+            GamePiece piece = swap == 0 ? engine.getCurrentPiece() : engine.getNextPiece();
+            for(int rotations = 0; rotations < GamePiece.ROTATIONS; rotations++) {
+                GamePiece rotated = piece.rotate(rotations);
+                for(int x = 0; x < grid.getCols(); x++) {
+                    for(int y = 0; y < grid.getRows(); y++) {
+                        if(grid.canPlayPiece(rotated, x, y) && random.nextInt(++seen) == 0) {
+                            chosen = new Move(swap == 1, rotations, rotated, x, y, 0);
+                        }
+                    }
+                }
+            }
+        }
+        return chosen;
+    }
+
+    /**
+     * Plays games on one thread, with everything it touches confined to that thread
+     */
+    private final class Worker implements Runnable {
+
+        /**
+         * The number of games in the whole run
+         */
+        private final long games;
+
+        /**
+         * System.nanoTime() after which no more games are started
+         */
+        private final long stopAt;
+
+        /**
+         * Hands out game numbers, shared between workers
+         */
+        private final AtomicLong next;
+
+        /**
+         * Counts games played, shared between workers
+         */
+        private final AtomicLong done;
+
+        /**
+         * Results of the games this worker played
+         */
+        private final Stats stats = new Stats(scoreBucket);
+
+        /**
+         * Deals the pieces of every game this worker plays
+         */
+        private final PieceGenerator generator = pieces.get();
+
+        /**
+         * Single thread pool the expectimax bot searches on, or null for the other bots
+         */
+        private final ForkJoinPool searchPool = policy.equals("expectimax") ? new ForkJoinPool(1) : null;
+
+        /**
+         * Chooses every move this worker plays
+         */
+        private final Policy bot = policy(searchPool);
+
+        /**
+         * The simulated time, in nanoseconds
+         */
+        private long now;
+
+        /**
+         * Why the worker stopped early, or null
+         */
+        private volatile Throwable failure;
+
+        /**
+         * Create a worker
+         * @param games the number of games in the whole run
+         * @param stopAt System.nanoTime() after which no more games are started
+         * @param next hands out game numbers
+         * @param done counts games played
+         */
+        Worker(long games, long stopAt, AtomicLong next, AtomicLong done) {
+            this.games = games;
+            this.stopAt = stopAt;
+            this.next = next;
+            this.done = done;
+        }
+
+        /**
+         * Claim and play games until there are none left or time is up
+         */
+        @Override
+        public void run() {
+            try {
+                while(System.nanoTime() - stopAt < 0) {
+                    long first = next.getAndAdd(CHUNK);
+                    if(first >= games) break;
+                    long last = Math.min(first + CHUNK, games);
+                    for(long game = first; game < last; game++) {
+                        play(seed + game * SEED_STEP);
+                        done.incrementAndGet();
+                    }
+                }
+            } catch (Throwable e) {
+                failure = e;
+            }
+        }
+
+        /**
+         * Release the search pool, once the worker has finished or is being abandoned
+         */
+        void close() {
+            if(searchPool != null) {
+                searchPool.shutdownNow();
+            }
+        }
+
+        /**
+         * Play one game to the end and record its results
+         * @param gameSeed the seed of the game
+         */
+        private void play(long gameSeed) {
+            GameEngine engine = new GameEngine(size, size, () -> now, generator);
+            engine.setSeed(gameSeed);
+            SplittableRandom random = new SplittableRandom(~gameSeed);
+            long started = now;
+            int placed = 0;
+            int lines = 0;
+            engine.start();
+
+            while(engine.isRunning()) {
+                now += think(random);
+                if(engine.tick()) continue;
+
+                Move move = bot.choose(engine, random);
+                boolean moved = false;
+                if(move != null) {
+                    for(Action action : move.toActions()) {
+                        long result = engine.apply(action);
+                        lines += ActionResult.getLines(result);
+                        moved |= action instanceof Action.Place && ActionResult.isApplied(result);
+                    }
+                }
+                if(moved) {
+                    placed++;
+                } else {
+                    // Nothing could be placed, so the game loop runs out
+                    now = Math.max(now, engine.getDeadline());
+                    engine.tick();
+                }
+            }
+
+            stats.score.add(engine.getScore());
+            stats.level.add(engine.getLevel());
+            stats.pieces.add(placed);
+            stats.lines.add(lines);
+            stats.seconds.add((now - started) / 1_000_000_000L);
+        }
+
+        /**
+         * Pick how long the bot takes over a move, exponentially distributed around the mean think time
+         * @param random source of randomness
+         * @return the time in nanoseconds
+         */
+        private long think(SplittableRandom random) {
+            if(thinkMs <= 0) return 0;
+            return (long) (-Math.log(1 - random.nextDouble()) * thinkMs * 1_000_000);
+        }
+
+    }
+
+    /**
+     * The distributions of the results of a set of games
+     */
+    private static final class Stats {
+
+        /**
+         * Final score of each game
+         */
+        final Histogram score;
+
+        /**
+         * Final level of each game
+         */
+        final Histogram level = new Histogram("level", 1);
+
+        /**
+         * Pieces placed in each game
+         */
+        final Histogram pieces = new Histogram("pieces", 1);
+
+        /**
+         * Lines cleared in each game
+         */
+        final Histogram lines = new Histogram("lines", 1);
+
+        /**
+         * Simulated length of each game, in seconds
+         */
+        final Histogram seconds = new Histogram("seconds", 1);
+
+        /**
+         * Create empty distributions
+         * @param scoreBucket width of the score buckets
+         */
+        Stats(int scoreBucket) {
+            this.score = new Histogram("score", scoreBucket);
+        }
+
+        /**
+         * Add the results of other games
+         * @param other the results to add
+         */
+        void merge(Stats other) {
+            score.merge(other.score);
+            level.merge(other.level);
+            pieces.merge(other.pieces);
+            lines.merge(other.lines);
+            seconds.merge(other.seconds);
+        }
+
+        /**
+         * Describe the mean of each distribution
+         * @return the means
+         */
+        String means() {
+            return String.format("score %.1f, level %.2f, pieces %.1f, lines %.1f, seconds %.1f", score.mean(),
+                level.mean(), pieces.mean(), lines.mean(), seconds.mean());
+        }
+
+        /**
+         * Write every distribution as CSV
+         * @param writer where to write
+         */
+        void write(PrintWriter writer) {
+            writer.println("metric,from,to,count");
+            score.write(writer);
+            level.write(writer);
+            pieces.write(writer);
+            lines.write(writer);
+            seconds.write(writer);
+        }
+
+    }
+
+    /**
+     * Counts of values falling in buckets of equal width, starting at 0
+     */
+    private static final class Histogram {
+
+        /**
+         * Name of the values counted
+         */
+        private final String metric;
+
+        /**
+         * Width of each bucket
+         */
+        private final int width;
+
+        /**
+         * Count in each bucket, grown as larger values are added
+         */
+        private long[] counts = new long[64];
+
+        /**
+         * The number of values added
+         */
+        private long total;
+
+        /**
+         * The sum of the values added
+         */
+        private double sum;
+
+        /**
+         * Create an empty histogram
+         * @param metric name of the values counted
+         * @param width width of each bucket
+         */
+        Histogram(String metric, int width) {
+            this.metric = metric;
+            this.width = width;
+        }
+
+        /**
+         * Count a value, treating negative values as 0
+         * @param value the value
+         */
+        void add(long value) {
+            value = Math.max(value, 0);
+            int bucket = (int) Math.min(value / width, Integer.MAX_VALUE - 8);
+            if(bucket >= counts.length) {
+                counts = Arrays.copyOf(counts, Math.max(bucket + 1, counts.length * 2));
+            }
+            counts[bucket]++;
+            total++;
+            sum += value;
+        }
+
+        /**
+         * Add the counts of another histogram with the same buckets
+         * @param other the histogram to add
+         */
+        void merge(Histogram other) {
+            if(other.counts.length > counts.length) {
+                counts = Arrays.copyOf(counts, other.counts.length);
+            }
+            for(int i = 0; i < other.counts.length; i++) {
+                counts[i] += other.counts[i];
+            }
+            total += other.total;
+            sum += other.sum;
+        }
+
+        /**
+         * Get the mean of the values added
+         * @return the mean, or 0 if there are none
+         */
+        double mean() {
+            return total == 0 ? 0 : sum / total;
+        }
+
+        /**
+         * Write a row for each bucket holding any values, giving the range of the bucket, from inclusive and to
+         * exclusive, and its count
+         * @param writer where to write
+         */
+        void write(PrintWriter writer) {
+            for(int i = 0; i < counts.length; i++) {
+                if(counts[i] == 0) continue;
+                long from = (long) i * width;
+                writer.println(metric + "," + from + "," + (from + width) + "," + counts[i]);
+            }
+        }
+
+    }
+
+}
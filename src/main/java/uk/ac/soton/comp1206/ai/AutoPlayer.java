@@ -0,0 +1,281 @@
+package uk.ac.soton.comp1206.ai;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import javafx.animation.AnimationTimer;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import uk.ac.soton.comp1206.game.Action;
+import uk.ac.soton.comp1206.game.Game;
+import uk.ac.soton.comp1206.game.GameEngine;
+import uk.ac.soton.comp1206.game.GameSnapshot;
+import uk.ac.soton.comp1206.game.LatencyStats;
+
+/**
+ * Plays a Game by itself, for demos and for soak testing the interface at high move rates.
+ *
+ * Each move is searched for on a snapshot of the game away from the JavaFX thread. Its actions are then queued
+ * through the same Game.queue() a player's keys use, no faster than the configured actions per minute. While it plays,
+ * the time between frames is recorded and logged every few seconds.
+ */
+public class AutoPlayer {
+
+    private static final Logger logger = LogManager.getLogger(AutoPlayer.class);
+
+    /**
+     * Actions per minute meaning as fast as the game allows
+     */
+    public static final int FASTEST = 0;
+
+    /**
+     * Time between reports of the frame times, in nanoseconds
+     */
+    private static final long REPORT_INTERVAL = 5_000_000_000L;
+
+    /**
+     * The game being played
+     */
+    private final Game game;
+
+    /**
+     * Finds each move
+     */
+    private final MoveSearch search;
+
+    /**
+     * Runs the player once per frame
+     */
+    private final AnimationTimer timer = new AnimationTimer() {
+        @Override
+        public void handle(long now) {
+            pulse(now);
+        }
+    };
+
+    /**
+     * Actions of the chosen move still to be queued
+     */
+    private final ArrayDeque<Action> pending = new ArrayDeque<>();
+
+    /**
+     * Actions per minute, or FASTEST
+     */
+    private int apm;
+
+    /**
+     * Time between actions in nanoseconds, 0 when playing as fast as possible
+     */
+    private long actionInterval;
+
+    /**
+     * Called each time actions are queued, or null
+     */
+    private Runnable activityListener;
+
+    /**
+     * The search in progress, or null if there is none
+     */
+    private CompletableFuture<Move> searching;
+
+    /**
+     * The snapshot being searched
+     */
+    private GameSnapshot searched;
+
+    /**
+     * Whether the player is playing
+     */
+    private boolean running;
+
+    /**
+     * Time of the last frame, or 0 before the first frame
+     */
+    private long lastFrame;
+
+    /**
+     * Time of the first frame
+     */
+    private long startTime;
+
+    /**
+     * Earliest time the next action can be queued
+     */
+    private long nextAction;
+
+    /**
+     * Time of the last report
+     */
+    private long lastReport;
+
+    /**
+     * Time between frames since the last report
+     */
+    private LatencyStats frameTimes = new LatencyStats();
+
+    /**
+     * Number of moves chosen
+     */
+    private long moves;
+
+    /**
+     * Number of actions queued
+     */
+    private long actions;
+
+    /**
+     * Create a player for a game
+     * @param game the game to play
+     * @param search finds each move
+     * @param apm actions per minute, or FASTEST
+     */
+    public AutoPlayer(Game game, MoveSearch search, int apm) {
+        this.game = game;
+        this.search = search;
+        setApm(apm);
+    }
+
+    /**
+     * Change how fast the player plays
+     * @param apm actions per minute, or FASTEST
+     */
+    public void setApm(int apm) {
+        if(apm < 0) {
+            throw new IllegalArgumentException("Actions per minute cannot be negative: " + apm);
+        }
+        this.apm = apm;
+        this.actionInterval = apm == FASTEST ? 0 : 60_000_000_000L / apm;
+    }
+
+    /**
+     * Set what is told each time the player queues actions, so it can treat them like a player's input
+     * @param listener called on the JavaFX thread after actions are queued, or null
+     */
+    public void setActivityListener(Runnable listener) {
+        this.activityListener = listener;
+    }
+
+    /**
+     * Get how fast the player plays
+     * @return actions per minute, or FASTEST
+     */
+    public int getApm() {
+        return apm;
+    }
+
+    /**
+     * Start playing
+     */
+    public void start() {
+        if(running) return;
+        logger.info("Starting autoplay at {}", apm == FASTEST ? "full speed" : apm + " APM");
+        running = true;
+        lastFrame = 0;
+        moves = 0;
+        actions = 0;
+        frameTimes = new LatencyStats();
+        timer.start();
+    }
+
+    /**
+     * Stop playing, dropping any move not yet queued, and report the frame times
+     */
+    public void stop() {
+        if(!running) return;
+        running = false;
+        timer.stop();
+        if(searching != null) {
+            searching.cancel(false);
+            searching = null;
+        }
+        pending.clear();
+        if(lastFrame != 0) {
+            report(lastFrame);
+        }
+    }
+
+    /**
+     * Check whether the player is playing
+     * @return whether it is playing
+     */
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Record the frame time, then search for, collect or queue the next move as far as each is ready
+     * @param now the time of this frame in nanoseconds
+     */
+    private void pulse(long now) {
+        if(lastFrame == 0) {
+            startTime = now;
+            lastReport = now;
+            nextAction = now;
+        } else {
+            frameTimes.record(now - lastFrame);
+        }
+        lastFrame = now;
+
+        GameEngine engine = game.getEngine();
+        if(!engine.isRunning()) {
+            stop();
+            return;
+        }
+        if(now - lastReport >= REPORT_INTERVAL) {
+            report(now);
+        }
+        if(engine.isPaused()) return;
+
+        if(pending.isEmpty()) {
+            if(searching == null) {
+                // Only search once the last move has been applied, so the snapshot is up to date
+                if(game.getInput().size() > 0) return;
+                searched = engine.snapshot();
+                searching = search.searchAsync(searched);
+            } else if(searching.isDone()) {
+                Move move = searching.isCompletedExceptionally() ? null : searching.join();
+                searching = null;
+                // A move found for a game that has since changed, such as by the timer running out, is searched again
+                if(move != null && isCurrent(engine, searched)) {
+                    pending.addAll(move.toActions());
+                    moves++;
+                }
+            }
+        }
+
+        boolean queued = false;
+        while(!pending.isEmpty() && now - nextAction >= 0) {
+            game.queue(pending.poll());
+            actions++;
+            nextAction = Math.max(nextAction, now - actionInterval) + actionInterval;
+            queued = true;
+        }
+        if(queued && activityListener != null) {
+            activityListener.run();
+        }
+    }
+
+    /**
+     * Check whether a game is still in the state a snapshot was taken in
+     * @param engine the game
+     * @param snapshot the snapshot
+     * @return whether the grid and pieces are the same
+     */
+    private static boolean isCurrent(GameEngine engine, GameSnapshot snapshot) {
+        return engine.getCurrentPiece() == snapshot.getCurrentPiece()
+            && engine.getNextPiece() == snapshot.getNextPiece()
+            && engine.getGrid().getHash() == snapshot.getGrid().getHash();
+    }
+
+    /**
+     * Log the moves made, the actions per minute reached and the frame times since the last report
+     * @param now the current time in nanoseconds
+     */
+    private void report(long now) {
+        double minutes = Math.max(now - startTime, 1) / 60e9;
+        logger.info("Autoplay: {} moves, {} actions, {} APM, frame times {}", moves, actions,
+            Math.round(actions / minutes), frameTimes);
+        frameTimes = new LatencyStats();
+        lastReport = now;
+    }
+
+}
@@ -0,0 +1,310 @@
+package uk.ac.soton.comp1206.ai;
+
+import uk.ac.soton.comp1206.game.GamePiece;
+import uk.ac.soton.comp1206.game.Grid;
+import uk.ac.soton.comp1206.game.GridSnapshot;
+import uk.ac.soton.comp1206.game.PieceSet;
+import uk.ac.soton.comp1206.game.PlacementIndex;
+
+/**
+ * A bare copy of a grid for the AI to search with: one occupancy word per row and nothing else. It holds no
+ * properties and no colours, so a search can copy and change boards freely on any thread. A board must only be used by
+ * one thread at a time.
+ *
+ * Like a Grid, a board keeps a Zobrist hash of its filled blocks, and a PlacementIndex once placements are first
+ * counted. Both are updated as pieces are placed and lines cleared, and copied along with the blocks.
+ */
+public final class Board {
+
+    /**
+     * The number of columns
+     */
+    private final int cols;
+
+    /**
+     * The number of rows
+     */
+    private final int rows;
+
+    /**
+     * Occupancy word of a completely filled row
+     */
+    private final long fullRow;
+
+    /**
+     * Occupancy word of every row, bit x is set when column x is filled
+     */
+    private final long[] words;
+
+    /**
+     * Zobrist hash of the filled blocks, using the Grid keys with every filled block holding 1
+     */
+    private long hash;
+
+    /**
+     * Index of legal placements, created when placements are first counted
+     */
+    private PlacementIndex placements;
+
+    /**
+     * Blocks cleared by the last call to place()
+     */
+    private int lastBlocks;
+
+    /**
+     * Create an empty board
+     * @param cols number of columns
+     * @param rows number of rows
+     */
+    public Board(int cols, int rows) {
+        this.cols = cols;
+        this.rows = rows;
+        this.fullRow = cols == Long.SIZE ? -1L : (1L << cols) - 1;
+        this.words = new long[rows];
+    }
+
+    /**
+     * Create a board with the same blocks filled as a grid snapshot
+     * @param snapshot the grid snapshot
+     * @return the board
+     */
+    public static Board of(GridSnapshot snapshot) {
+        Board board = new Board(snapshot.getCols(), snapshot.getRows());
+        for(int y = 0; y < board.rows; y++) {
+            board.words[y] = snapshot.getRowMask(y);
+        }
+        board.hash = board.computeHash();
+        return board;
+    }
+
+    /**
+     * Make an independent copy of this board
+     * @return the copy
+     */
+    public Board copy() {
+        Board board = new Board(cols, rows);
+        board.copyFrom(this);
+        return board;
+    }
+
+    /**
+     * Overwrite this board with another of the same size
+     * @param other the board to copy
+     */
+    public void copyFrom(Board other) {
+        System.arraycopy(other.words, 0, words, 0, rows);
+        hash = other.hash;
+        if(placements == null) return;
+        if(other.placements != null && other.placements.getPieceSet() == placements.getPieceSet()) {
+            placements.copyFrom(other.placements);
+        } else {
+            placements.invalidateRows(-1L);
+        }
+    }
+
+    /**
+     * Get the Zobrist key of a filled block
+     * @param x column
+     * @param y row
+     * @return the key
+     */
+    private long key(int x, int y) {
+        return Grid.zobristKey(y * cols + x, 1);
+    }
+
+    /**
+     * Flip the filled state of some blocks of a row in the hash
+     * @param bits mask with bit x set for every block to flip
+     * @param y row
+     */
+    private void flip(long bits, int y) {
+        for(; bits != 0; bits &= bits - 1) {
+            hash ^= key(Long.numberOfTrailingZeros(bits), y);
+        }
+    }
+
+    /**
+     * Move a row of a piece to the columns it covers on the board
+     * @param mask the row mask of the piece
+     * @param x the column the piece is centred on
+     * @param centre the centre offset of the piece
+     * @return the shifted mask, or -1 if part of the row would be off the board
+     */
+    private long shift(int mask, int x, int centre) {
+        int shift = x - centre;
+        // Checked before shifting, since on a 64 column board blocks shifted past the last column would be lost
+        if(shift + Integer.SIZE - Integer.numberOfLeadingZeros(mask) > cols) return -1;
+        if(shift < 0) {
+            if((mask & ((1 << -shift) - 1)) != 0) return -1;
+            return mask >>> -shift;
+        }
+        return (long) mask << shift;
+    }
+
+    /**
+     * Check whether a piece can be placed centred on a block
+     * @param piece the piece
+     * @param x the column
+     * @param y the row
+     * @return whether the placement is legal
+     */
+    public boolean fits(GamePiece piece, int x, int y) {
+        int centre = piece.getCentre();
+        for(int j = 0; j < piece.getSize(); j++) {
+            int mask = piece.getRowMask(j);
+            if(mask == 0) continue;
+            int row = y + j - centre;
+            if(row < 0 || row >= rows) return false;
+            long shifted = shift(mask, x, centre);
+            if(shifted == -1 || (words[row] & shifted) != 0) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Place a piece and clear any full rows and columns. The placement must be legal.
+     * @param piece the piece
+     * @param x the column it is centred on
+     * @param y the row it is centred on
+     * @return the number of lines cleared
+     */
+    public int place(GamePiece piece, int x, int y) {
+        assert fits(piece, x, y) : "Illegal placement of " + piece + " at " + x + "," + y;
+        int centre = piece.getCentre();
+        long changedRows = 0;
+        for(int j = 0; j < piece.getSize(); j++) {
+            int mask = piece.getRowMask(j);
+            if(mask == 0) continue;
+            int row = y + j - centre;
+            long shifted = shift(mask, x, centre);
+            words[row] |= shifted;
+            flip(shifted, row);
+            changedRows |= 1L << row;
+        }
+
+        long fullCols = fullRow;
+        long fullRows = 0;
+        for(int row = 0; row < rows; row++) {
+            fullCols &= words[row];
+            if(words[row] == fullRow) {
+                fullRows |= 1L << row;
+            }
+        }
+        int rowCount = Long.bitCount(fullRows);
+        int colCount = Long.bitCount(fullCols);
+        lastBlocks = rowCount * cols + colCount * rows - rowCount * colCount;
+        if(rowCount + colCount > 0) {
+            for(int row = 0; row < rows; row++) {
+                long cleared = (fullRows >>> row & 1) != 0 ? words[row] : words[row] & fullCols;
+                flip(cleared, row);
+                words[row] &= ~cleared;
+            }
+            changedRows = colCount > 0 ? -1L : changedRows | fullRows;
+        }
+        if(placements != null) {
+            placements.invalidateRows(changedRows);
+        }
+        assert hash == computeHash() : "Incremental hash does not match the board contents";
+        return rowCount + colCount;
+    }
+
+    /**
+     * Get the number of blocks cleared by the last placement
+     * @return number of blocks
+     */
+    public int getLastBlocks() {
+        return lastBlocks;
+    }
+
+    /**
+     * Count the empty blocks boxed in on all four sides by filled blocks or the edge. Only a single block piece can
+     * fill one of these.
+     * @return number of holes
+     */
+    public int countHoles() {
+        int holes = 0;
+        for(int row = 0; row < rows; row++) {
+            long word = words[row];
+            long above = row == 0 ? fullRow : words[row - 1];
+            long below = row == rows - 1 ? fullRow : words[row + 1];
+            long left = word << 1 | 1;
+            long right = word >>> 1 | 1L << (cols - 1);
+            holes += Long.bitCount(~word & above & below & left & right & fullRow);
+        }
+        return holes;
+    }
+
+    /**
+     * Count the legal placements of every distinct orientation in a piece set. The placements are kept in an index,
+     * so only the rows near blocks changed since the last count are worked out again.
+     * @param pieceSet the piece set
+     * @return number of placements
+     */
+    public int countPlacements(PieceSet pieceSet) {
+        if(placements == null || placements.getPieceSet() != pieceSet) {
+            placements = new PlacementIndex(this::getRowMask, cols, rows, pieceSet);
+        }
+        return placements.countAll();
+    }
+
+    /**
+     * Count the filled blocks
+     * @return number of blocks
+     */
+    public int countBlocks() {
+        int blocks = 0;
+        for(int row = 0; row < rows; row++) {
+            blocks += Long.bitCount(words[row]);
+        }
+        return blocks;
+    }
+
+    /**
+     * Get the Zobrist hash of the filled blocks, which is kept up to date as pieces are placed, so that boards reached
+     * by different moves can be recognised as the same. An empty board hashes to 0.
+     * @return the hash
+     */
+    public long hash() {
+        return hash;
+    }
+
+    /**
+     * Calculate the Zobrist hash of the filled blocks from scratch. Should always equal hash()
+     * @return the hash
+     */
+    public long computeHash() {
+        long fresh = 0;
+        for(int row = 0; row < rows; row++) {
+            for(long bits = words[row]; bits != 0; bits &= bits - 1) {
+                fresh ^= key(Long.numberOfTrailingZeros(bits), row);
+            }
+        }
+        return fresh;
+    }
+
+    /**
+     * Get the occupancy word of a row
+     * @param y row
+     * @return the occupancy word, bit x is set when column x is filled
+     */
+    public long getRowMask(int y) {
+        return words[y];
+    }
+
+    /**
+     * Get the number of columns
+     * @return number of columns
+     */
+    public int getCols() {
+        return cols;
+    }
+
+    /**
+     * Get the number of rows
+     * @return number of rows
+     */
+    public int getRows() {
+        return rows;
+    }
+
+}
@@ -0,0 +1,570 @@
+package uk.ac.soton.comp1206.ai;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.LongAdder;
+import uk.ac.soton.comp1206.game.GamePiece;
+import uk.ac.soton.comp1206.game.GameSnapshot;
+import uk.ac.soton.comp1206.game.PieceSet;
+
+/**
+ * Finds the best move by looking ahead over the pieces still to come. The piece after the next one is unknown, so each
+ * move is valued by averaging over every piece that could be dealt (expectimax).
+ *
+ * The search deepens one placement at a time until its time budget runs out, and returns the best move of the deepest
+ * search it finished, so it always has an answer. Below the first placement only the most promising moves at each
+ * turn are looked into. Each deeper search splits the work across a ForkJoinPool. Values are kept in a
+ * TranspositionTable by board hash and pieces, so positions reached by different orders of moves are only valued once,
+ * and positions valued for one move are reused for the moves after it.
+ */
+public class ExpectimaxSearch implements MoveSearch {
+
+    /**
+     * A time budget short enough for a hint to appear within a frame, in nanoseconds
+     */
+    public static final long HINT_BUDGET = 5_000_000L;
+
+    /**
+     * A time budget for a closer analysis, in nanoseconds
+     */
+    public static final long ANALYSIS_BUDGET = 200_000_000L;
+
+    /**
+     * The number of moves looked into further at each turn when none is given
+     */
+    public static final int DEFAULT_BEAM = 6;
+
+    /**
+     * The most placements looked ahead
+     */
+    public static final int MAX_DEPTH = 8;
+
+    /**
+     * The outcome of a search
+     * @param move the best move, or null if no piece can be placed
+     * @param depth the number of placements looked ahead by the deepest search finished
+     * @param nodes the number of turns valued
+     */
+    public record Result(Move move, int depth, long nodes) {}
+
+    /**
+     * The pool the search runs in
+     */
+    private final ForkJoinPool pool;
+
+    /**
+     * How positions are scored
+     */
+    private final Heuristic heuristic;
+
+    /**
+     * How long a search may take, in nanoseconds
+     */
+    private final long budget;
+
+    /**
+     * The number of moves looked into further at each turn
+     */
+    private final int beam;
+
+    /**
+     * Values of turns and positions, kept between searches
+     */
+    private final TranspositionTable table;
+
+    /**
+     * Create a search using the common pool and the default heuristic
+     * @param budget how long a search may take, in nanoseconds
+     */
+    public ExpectimaxSearch(long budget) {
+        this(ForkJoinPool.commonPool(), Heuristic.DEFAULT, budget, DEFAULT_BEAM, new TranspositionTable());
+    }
+
+    /**
+     * Create a search
+     * @param pool the pool the search runs in
+     * @param heuristic how positions are scored
+     * @param budget how long a search may take, in nanoseconds
+     * @param beam the number of moves looked into further at each turn
+     * @param table where values are kept between searches, only to be shared with searches using the same heuristic
+     * and beam
+     */
+    public ExpectimaxSearch(ForkJoinPool pool, Heuristic heuristic, long budget, int beam, TranspositionTable table) {
+        if(beam < 1) {
+            throw new IllegalArgumentException("Beam must be at least 1: " + beam);
+        }
+        this.pool = pool;
+        this.heuristic = heuristic;
+        this.budget = budget;
+        this.beam = beam;
+        this.table = table;
+    }
+
+    /**
+     * Get where values are kept between searches
+     * @return the transposition table
+     */
+    public TranspositionTable getTable() {
+        return table;
+    }
+
+    /**
+     * Find the best move without waiting
+     * @param snapshot the state of the game
+     * @return the best move, or null if no piece can be placed, once the search finishes
+     */
+    @Override
+    public CompletableFuture<Move> searchAsync(GameSnapshot snapshot) {
+        return CompletableFuture.supplyAsync(() -> analyse(snapshot).move(), pool);
+    }
+
+    /**
+     * Find the best move, waiting until the search finishes or the budget runs out
+     * @param snapshot the state of the game
+     * @return the outcome of the search
+     */
+    public Result analyse(GameSnapshot snapshot) {
+        Search search = new Search(snapshot, System.nanoTime() + budget);
+        List<RootMove> moves = search.rootMoves();
+        if(moves.isEmpty()) {
+            return new Result(null, 0, search.nodes.sum());
+        }
+
+        // One placement ahead is always finished, so there is an answer however short the budget
+        for(RootMove move : moves) {
+            move.value = heuristic.lines(move.cleared) + search.position(move.after);
+        }
+        moves.sort((a, b) -> Double.compare(b.value, a.value));
+        RootMove best = moves.get(0);
+        int depth = 1;
+
+        List<RootMove> deepened = moves.subList(0, Math.min(beam, moves.size()));
+        while(depth < MAX_DEPTH && moves.size() > 1) {
+            int next = depth + 1;
+            double[] values = new double[deepened.size()];
+            try {
+                pool.invoke(new DeepenTask(search, deepened, next - 1, values));
+            } catch (SearchTimeout e) {
+                break;
+            }
+            for(int i = 0; i < values.length; i++) {
+                deepened.get(i).value = values[i];
+            }
+            deepened.sort((a, b) -> Double.compare(b.value, a.value));
+            best = deepened.get(0);
+            depth = next;
+        }
+
+        Move move = new Move(best.swap, best.rotations, best.piece, best.x, best.y, best.value);
+        return new Result(move, depth, search.nodes.sum());
+    }
+
+    /**
+     * Thrown through a search when its time budget runs out
+     */
+    private static final class SearchTimeout extends RuntimeException {
+
+        /**
+         * Version of the serialized form, which is never used since the exception never leaves the search
+         */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * The single instance, with no stack trace since it is only used to unwind
+         */
+        static final SearchTimeout INSTANCE = new SearchTimeout();
+
+        private SearchTimeout() {
+            super(null, null, false, false);
+        }
+    }
+
+    /**
+     * A legal first move, with the board it leaves
+     */
+    private static final class RootMove {
+
+        /**
+         * Whether the move swaps first
+         */
+        final boolean swap;
+
+        /**
+         * Rotations right after any swap
+         */
+        final int rotations;
+
+        /**
+         * The piece as placed
+         */
+        final GamePiece piece;
+
+        /**
+         * Where the piece is centred
+         */
+        final int x, y;
+
+        /**
+         * The board after the move
+         */
+        final Board after;
+
+        /**
+         * The number of lines the move clears
+         */
+        final int cleared;
+
+        /**
+         * The piece number held for the next turn
+         */
+        final int held;
+
+        /**
+         * The value from the deepest search finished
+         */
+        double value;
+
+        /**
+         * Create a first move
+         * @param swap whether the move swaps first
+         * @param rotations rotations right after any swap
+         * @param piece the piece as placed
+         * @param x the column it is centred on
+         * @param y the row it is centred on
+         * @param after the board after the move
+         * @param cleared the number of lines the move clears
+         * @param held the piece number held for the next turn
+         */
+        RootMove(boolean swap, int rotations, GamePiece piece, int x, int y, Board after, int cleared, int held) {
+            this.swap = swap;
+            this.rotations = rotations;
+            this.piece = piece;
+            this.x = x;
+            this.y = y;
+            this.after = after;
+            this.cleared = cleared;
+            this.held = held;
+        }
+    }
+
+    /**
+     * The state shared by every task of one search
+     */
+    private final class Search {
+
+        /**
+         * The state of the game searched from
+         */
+        final GameSnapshot snapshot;
+
+        /**
+         * The time the search must finish by
+         */
+        final long deadline;
+
+        /**
+         * The set the pieces come from
+         */
+        final PieceSet pieceSet;
+
+        /**
+         * Every distinct orientation of each piece number
+         */
+        final GamePiece[][] orientations;
+
+        /**
+         * Size of the board
+         */
+        final int cols, rows;
+
+        /**
+         * The number of placements open on an empty board
+         */
+        final int maxPlacements;
+
+        /**
+         * Piece number standing for no piece in the key of a position or a chance
+         */
+        final int none;
+
+        /**
+         * Number of turns valued
+         */
+        final LongAdder nodes = new LongAdder();
+
+        /**
+         * Set up a search
+         * @param snapshot the state of the game
+         * @param deadline the time the search must finish by
+         */
+        Search(GameSnapshot snapshot, long deadline) {
+            this.snapshot = snapshot;
+            this.deadline = deadline;
+            this.pieceSet = snapshot.getCurrentPiece().getPieceSet();
+            this.cols = snapshot.getGrid().getCols();
+            this.rows = snapshot.getGrid().getRows();
+            this.maxPlacements = new Board(cols, rows).countPlacements(pieceSet);
+            this.none = pieceSet.size();
+            this.orientations = new GamePiece[pieceSet.size()][];
+            for(int piece = 0; piece < pieceSet.size(); piece++) {
+                List<GamePiece> distinct = new ArrayList<>(GamePiece.ROTATIONS);
+                for(int rotation = 0; rotation < GamePiece.ROTATIONS; rotation++) {
+                    GamePiece rotated = pieceSet.getPiece(piece, rotation);
+                    if(distinct.stream().noneMatch(p -> p.getOrientation() == rotated.getOrientation())) {
+                        distinct.add(rotated);
+                    }
+                }
+                orientations[piece] = distinct.toArray(new GamePiece[0]);
+            }
+        }
+
+        /**
+         * List every legal first move, rotating from the orientation each piece is in now
+         * @return the moves
+         */
+        List<RootMove> rootMoves() {
+            GamePiece current = snapshot.getCurrentPiece();
+            GamePiece next = snapshot.getNextPiece();
+            Board board = Board.of(snapshot.getGrid());
+            boolean[] seen = new boolean[pieceSet.getOrientations()];
+            List<RootMove> moves = new ArrayList<>();
+            for(int swap = 0; swap < 2; swap++) {
+                GamePiece piece = swap == 0 ? current : next;
+                int held = (swap == 0 ? next : current).getPiece();
+                for(int rotations = 0; rotations < GamePiece.ROTATIONS; rotations++) {
+                    GamePiece rotated = piece.rotate(rotations);
+                    if(seen[rotated.getOrientation()]) continue;
+                    seen[rotated.getOrientation()] = true;
+                    for(int y = 0; y < rows; y++) {
+                        for(int x = 0; x < cols; x++) {
+                            if(!board.fits(rotated, x, y)) continue;
+                            Board after = board.copy();
+                            int cleared = after.place(rotated, x, y);
+                            moves.add(new RootMove(swap == 1, rotations, rotated, x, y, after, cleared, held));
+                        }
+                    }
+                }
+            }
+            return moves;
+        }
+
+        /**
+         * Stop the search if its time budget has run out
+         */
+        void checkDeadline() {
+            if(System.nanoTime() - deadline > 0) throw SearchTimeout.INSTANCE;
+        }
+
+        /**
+         * Score a board on its own, remembering the score for the next time the board is reached
+         * @param board the board
+         * @return the score
+         */
+        double position(Board board) {
+            long key = TranspositionTable.key(board.hash(), none, none);
+            double known = table.getValue(key, 0);
+            if(!Double.isNaN(known)) return known;
+            double score = heuristic.position(board, board.countPlacements(pieceSet), maxPlacements);
+            table.put(key, 0, score, TranspositionTable.NO_MOVE);
+            return score;
+        }
+
+        /**
+         * Value a turn: the best of every move, looking a given number of placements ahead
+         * @param board the board
+         * @param current the piece number to place
+         * @param next the piece number that could be swapped in
+         * @param depth the number of placements to look ahead, at least 1
+         * @return the value
+         */
+        double turn(Board board, int current, int next, int depth) {
+            checkDeadline();
+            long key = TranspositionTable.key(board.hash(), current, next);
+            double known = table.getValue(key, depth);
+            if(!Double.isNaN(known)) return known;
+            nodes.increment();
+
+            // Value every move on its own, keeping the best few to look into further, along with the best move from
+            // any shallower search of this turn
+            int stored = depth > 1 ? table.getMove(key) : TranspositionTable.NO_MOVE;
+            boolean storedLegal = false;
+            int bestMove = TranspositionTable.NO_MOVE;
+            int kept = 0;
+            double[] keptScores = new double[beam];
+            int[] keptMoves = new int[beam];
+            double best = Double.NEGATIVE_INFINITY;
+            Board after = new Board(cols, rows);
+            for(int swap = 0; swap < (current == next ? 1 : 2); swap++) {
+                GamePiece[] pieces = orientations[swap == 0 ? current : next];
+                for(int o = 0; o < pieces.length; o++) {
+                    for(int y = 0; y < rows; y++) {
+                        for(int x = 0; x < cols; x++) {
+                            if(!board.fits(pieces[o], x, y)) continue;
+                            checkDeadline();
+                            after.copyFrom(board);
+                            double score = heuristic.lines(after.place(pieces[o], x, y)) + position(after);
+                            int move = encode(swap, o, x, y);
+                            if(depth == 1) {
+                                if(score > best) {
+                                    best = score;
+                                    bestMove = move;
+                                }
+                                continue;
+                            }
+                            storedLegal |= move == stored;
+                            // Insert into the kept moves, which are sorted best first
+                            int at = kept < beam ? kept++ : beam;
+                            while(at > 0 && keptScores[at - 1] < score) {
+                                if(at < beam) {
+                                    keptScores[at] = keptScores[at - 1];
+                                    keptMoves[at] = keptMoves[at - 1];
+                                }
+                                at--;
+                            }
+                            if(at < beam) {
+                                keptScores[at] = score;
+                                keptMoves[at] = move;
+                            }
+                        }
+                    }
+                }
+            }
+            boolean storedKept = false;
+            for(int i = 0; i < kept; i++) {
+                storedKept |= keptMoves[i] == stored;
+            }
+            if(storedLegal && !storedKept) {
+                keptMoves[beam - 1] = stored;
+            }
+
+            for(int i = 0; i < kept; i++) {
+                int move = keptMoves[i];
+                int swap = move >>> 24;
+                GamePiece piece = orientations[swap == 0 ? current : next][move >>> 16 & 0xFF];
+                after.copyFrom(board);
+                int cleared = after.place(piece, move >>> 8 & 0xFF, move & 0xFF);
+                double score = heuristic.lines(cleared) + chance(after, swap == 0 ? next : current, depth - 1);
+                if(score > best) {
+                    best = score;
+                    bestMove = move;
+                }
+            }
+
+            double value = best == Double.NEGATIVE_INFINITY ? heuristic.lifeLost() : best;
+            table.put(key, depth, value, bestMove);
+            return value;
+        }
+
+        /**
+         * Value the moment before a piece is dealt: the average of the turns that follow each piece that could come
+         * @param board the board
+         * @param held the piece number kept from the last turn
+         * @param depth the number of placements to look ahead, at least 1
+         * @return the value
+         */
+        double chance(Board board, int held, int depth) {
+            long key = TranspositionTable.key(board.hash(), held, none);
+            double known = table.getValue(key, depth);
+            if(!Double.isNaN(known)) return known;
+            double total = 0;
+            for(int piece = 0; piece < pieceSet.size(); piece++) {
+                total += turn(board, held, piece, depth);
+            }
+            double value = total / pieceSet.size();
+            table.put(key, depth, value, TranspositionTable.NO_MOVE);
+            return value;
+        }
+    }
+
+    /**
+     * Pack a move at a turn into an int
+     * @param swap 1 if the move swaps first
+     * @param orientation index of the orientation placed
+     * @param x the column
+     * @param y the row
+     * @return the packed move
+     */
+    private static int encode(int swap, int orientation, int x, int y) {
+        return swap << 24 | orientation << 16 | x << 8 | y;
+    }
+
+    /**
+     * Looks the chosen first moves one placement further ahead, with one task for each move and piece that could be
+     * dealt after it
+     */
+    private final class DeepenTask extends RecursiveAction {
+
+        /**
+         * Version of the serialized form, which is never used since tasks are not serialized
+         */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * The search
+         */
+        private final Search search;
+
+        /**
+         * The first moves to look into
+         */
+        private final List<RootMove> moves;
+
+        /**
+         * The number of placements to look ahead after each first move
+         */
+        private final int depth;
+
+        /**
+         * The value of each first move, filled in by the task
+         */
+        private final double[] values;
+
+        /**
+         * Create a task
+         * @param search the search
+         * @param moves the first moves to look into
+         * @param depth the number of placements to look ahead after each first move
+         * @param values the value of each first move, filled in by the task
+         */
+        DeepenTask(Search search, List<RootMove> moves, int depth, double[] values) {
+            this.search = search;
+            this.moves = moves;
+            this.depth = depth;
+            this.values = values;
+        }
+
+        /**
+         * Value every first move, averaging over the piece dealt after it
+         */
+        @Override
+        protected void compute() {
+            int pieces = search.pieceSet.size();
+            List<RecursiveTask<Double>> tasks = new ArrayList<>(moves.size() * pieces);
+            for(RootMove move : moves) {
+                for(int piece = 0; piece < pieces; piece++) {
+                    int dealt = piece;
+                    tasks.add(new RecursiveTask<>() {
+                        @Override
+                        protected Double compute() {
+                            return search.turn(move.after, move.held, dealt, depth);
+                        }
+                    });
+                }
+            }
+            ForkJoinTask.invokeAll(tasks);
+            for(int i = 0; i < moves.size(); i++) {
+                double total = 0;
+                for(int piece = 0; piece < pieces; piece++) {
+                    total += tasks.get(i * pieces + piece).join();
+                }
+                values[i] = heuristic.lines(moves.get(i).cleared) + total / pieces;
+            }
+        }
+    }
+
+}
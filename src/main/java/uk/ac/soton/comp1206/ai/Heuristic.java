@@ -0,0 +1,88 @@
+package uk.ac.soton.comp1206.ai;
+
+/**
+ * Scores the board left by a move. Clearing lines is good, leaving holes that only a single block can fill is bad, and
+ * keeping room for many placements is good. Running out of moves, and so losing a life, is worst of all.
+ */
+public final class Heuristic {
+
+    /**
+     * Weights that play well on the standard board
+     */
+    public static final Heuristic DEFAULT = new Heuristic(1.0, 0.1, 16.0, 20.0);
+
+    /**
+     * Weight of each line cleared
+     */
+    private final double lines;
+
+    /**
+     * Weight of each hole left
+     */
+    private final double holes;
+
+    /**
+     * Weight of the fraction of placements still open
+     */
+    private final double mobility;
+
+    /**
+     * Penalty for having no move left
+     */
+    private final double lifeLost;
+
+    /**
+     * Create a heuristic
+     * @param lines weight of each line cleared
+     * @param holes penalty for each hole left
+     * @param mobility weight of the fraction of placements still open, from 0 to 1
+     * @param lifeLost penalty for having no move left
+     */
+    public Heuristic(double lines, double holes, double mobility, double lifeLost) {
+        this.lines = lines;
+        this.holes = holes;
+        this.mobility = mobility;
+        this.lifeLost = lifeLost;
+    }
+
+    /**
+     * Score a move
+     * @param board the board after the move
+     * @param cleared the number of lines the move cleared
+     * @param placements the number of placements open on the board after the move
+     * @param maxPlacements the number of placements open on an empty board
+     * @return the score, higher is better
+     */
+    public double score(Board board, int cleared, int placements, int maxPlacements) {
+        return lines(cleared) + position(board, placements, maxPlacements);
+    }
+
+    /**
+     * Score the lines cleared by a move
+     * @param cleared the number of lines cleared
+     * @return the score
+     */
+    public double lines(int cleared) {
+        return lines * cleared;
+    }
+
+    /**
+     * Score a board on its own, however it was reached
+     * @param board the board
+     * @param placements the number of placements open on the board
+     * @param maxPlacements the number of placements open on an empty board
+     * @return the score, higher is better
+     */
+    public double position(Board board, int placements, int maxPlacements) {
+        return mobility * placements / maxPlacements - holes * board.countHoles();
+    }
+
+    /**
+     * Score having no move left
+     * @return the score, below any reachable position
+     */
+    public double lifeLost() {
+        return -lifeLost;
+    }
+
+}
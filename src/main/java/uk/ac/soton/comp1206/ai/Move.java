@@ -0,0 +1,35 @@
+package uk.ac.soton.comp1206.ai;
+
+import java.util.ArrayList;
+import java.util.List;
+import uk.ac.soton.comp1206.game.Action;
+import uk.ac.soton.comp1206.game.GamePiece;
+
+/**
+ * A move chosen by the AI: whether to swap first, how many times to rotate, and where to place the piece
+ * @param swap whether to swap the current and next piece first
+ * @param rotations the number of times to rotate right after any swap
+ * @param piece the piece as it will be placed
+ * @param x the column to place it on
+ * @param y the row to place it on
+ * @param score the heuristic score of the move
+ */
+public record Move(boolean swap, int rotations, GamePiece piece, int x, int y, double score) {
+
+    /**
+     * Get the player actions that make this move
+     * @return the actions, in order
+     */
+    public List<Action> toActions() {
+        List<Action> actions = new ArrayList<>(3);
+        if(swap) {
+            actions.add(Action.SWAP);
+        }
+        if(rotations != 0) {
+            actions.add(new Action.Rotate(rotations));
+        }
+        actions.add(new Action.Place(x, y));
+        return actions;
+    }
+
+}
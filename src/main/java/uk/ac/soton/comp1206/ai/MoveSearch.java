@@ -0,0 +1,18 @@
+package uk.ac.soton.comp1206.ai;
+
+import java.util.concurrent.CompletableFuture;
+import uk.ac.soton.comp1206.game.GameSnapshot;
+
+/**
+ * Finds a move for a game, away from the thread the game is played on
+ */
+public interface MoveSearch {
+
+    /**
+     * Find the best move without waiting
+     * @param snapshot the state of the game
+     * @return the best move, or null if no piece can be placed, once the search finishes
+     */
+    CompletableFuture<Move> searchAsync(GameSnapshot snapshot);
+
+}
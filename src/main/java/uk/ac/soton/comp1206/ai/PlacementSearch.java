@@ -0,0 +1,207 @@
+package uk.ac.soton.comp1206.ai;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import uk.ac.soton.comp1206.game.GamePiece;
+import uk.ac.soton.comp1206.game.GameSnapshot;
+import uk.ac.soton.comp1206.game.PieceSet;
+
+/**
+ * Finds the best move for a game by scoring every legal placement of the current piece, and of the next piece after a
+ * swap, in every distinct orientation. The candidates are split across a ForkJoinPool. The search works on a snapshot
+ * of the game, so it can run on any thread while the game carries on.
+ */
+public class PlacementSearch implements MoveSearch {
+
+    /**
+     * The most candidates scored by one task before it is split
+     */
+    private static final int THRESHOLD = 16;
+
+    /**
+     * The pool the search runs in
+     */
+    private final ForkJoinPool pool;
+
+    /**
+     * How moves are scored
+     */
+    private final Heuristic heuristic;
+
+    /**
+     * Create a search using the common pool and the default heuristic
+     */
+    public PlacementSearch() {
+        this(ForkJoinPool.commonPool(), Heuristic.DEFAULT);
+    }
+
+    /**
+     * Create a search
+     * @param pool the pool the search runs in
+     * @param heuristic how moves are scored
+     */
+    public PlacementSearch(ForkJoinPool pool, Heuristic heuristic) {
+        this.pool = pool;
+        this.heuristic = heuristic;
+    }
+
+    /**
+     * Find the best move, waiting for the search to finish
+     * @param snapshot the state of the game
+     * @return the best move, or null if no piece can be placed
+     */
+    public Move search(GameSnapshot snapshot) {
+        return pool.invoke(task(snapshot));
+    }
+
+    /**
+     * Find the best move on the calling thread, for callers which already run one search per core
+     * @param snapshot the state of the game
+     * @return the best move, or null if no piece can be placed
+     */
+    public Move searchHere(GameSnapshot snapshot) {
+        return task(snapshot).scan();
+    }
+
+    /**
+     * Set up a task scoring every candidate move
+     * @param snapshot the state of the game
+     * @return the task
+     */
+    private SearchTask task(GameSnapshot snapshot) {
+        GamePiece current = snapshot.getCurrentPiece();
+        GamePiece next = snapshot.getNextPiece();
+        PieceSet pieceSet = current.getPieceSet();
+
+        // Every distinct orientation of the current piece, then of the next piece if it adds anything
+        List<Move> shapes = new ArrayList<>(2 * GamePiece.ROTATIONS);
+        boolean[] seen = new boolean[pieceSet.getOrientations()];
+        for(int swap = 0; swap < 2; swap++) {
+            GamePiece piece = swap == 0 ? current : next;
+            for(int rotations = 0; rotations < GamePiece.ROTATIONS; rotations++) {
+                GamePiece rotated = piece.rotate(rotations);
+                if(seen[rotated.getOrientation()]) continue;
+                seen[rotated.getOrientation()] = true;
+                shapes.add(new Move(swap == 1, rotations, rotated, 0, 0, 0));
+            }
+        }
+
+        Board board = Board.of(snapshot.getGrid());
+        int maxPlacements = new Board(board.getCols(), board.getRows()).countPlacements(pieceSet);
+        return new SearchTask(board, shapes, maxPlacements, 0, shapes.size() * board.getCols() * board.getRows());
+    }
+
+    /**
+     * Find the best move without waiting
+     * @param snapshot the state of the game
+     * @return the best move, or null if no piece can be placed, once the search finishes
+     */
+    @Override
+    public CompletableFuture<Move> searchAsync(GameSnapshot snapshot) {
+        return CompletableFuture.supplyAsync(() -> search(snapshot), pool);
+    }
+
+    /**
+     * Keep the better of two moves, preferring the first when they score the same
+     * @param first the first move, or null
+     * @param second the second move, or null
+     * @return the better move
+     */
+    private static Move better(Move first, Move second) {
+        if(first == null) return second;
+        if(second == null) return first;
+        return second.score() > first.score() ? second : first;
+    }
+
+    /**
+     * Scores a range of candidates, splitting it in half until it is small enough
+     */
+    private class SearchTask extends RecursiveTask<Move> {
+
+        /**
+         * Version of the serialized form, which is never used since tasks are not serialized
+         */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * The board before the move, shared and never changed
+         */
+        private final Board board;
+
+        /**
+         * The orientations to try, each with its swap and rotations
+         */
+        private final List<Move> shapes;
+
+        /**
+         * The number of placements open on an empty board
+         */
+        private final int maxPlacements;
+
+        /**
+         * The range of candidates, where candidate i is shape i / cells at block i % cells
+         */
+        private final int from, to;
+
+        /**
+         * Create a task
+         * @param board the board before the move
+         * @param shapes the orientations to try
+         * @param maxPlacements the number of placements open on an empty board
+         * @param from the first candidate
+         * @param to one past the last candidate
+         */
+        SearchTask(Board board, List<Move> shapes, int maxPlacements, int from, int to) {
+            this.board = board;
+            this.shapes = shapes;
+            this.maxPlacements = maxPlacements;
+            this.from = from;
+            this.to = to;
+        }
+
+        /**
+         * Score the candidates, or split them between two tasks
+         * @return the best legal move in the range, or null if there is none
+         */
+        @Override
+        protected Move compute() {
+            if(to - from > THRESHOLD) {
+                int mid = (from + to) >>> 1;
+                SearchTask left = new SearchTask(board, shapes, maxPlacements, from, mid);
+                left.fork();
+                Move right = new SearchTask(board, shapes, maxPlacements, mid, to).compute();
+                return better(left.join(), right);
+            }
+            return scan();
+        }
+
+        /**
+         * Score every candidate in the range on this thread
+         * @return the best legal move in the range, or null if there is none
+         */
+        Move scan() {
+            int cols = board.getCols();
+            int cells = cols * board.getRows();
+            Board after = new Board(cols, board.getRows());
+            Move best = null;
+            for(int candidate = from; candidate < to; candidate++) {
+                Move shape = shapes.get(candidate / cells);
+                int x = candidate % cells % cols;
+                int y = candidate % cells / cols;
+                if(!board.fits(shape.piece(), x, y)) continue;
+                after.copyFrom(board);
+                int cleared = after.place(shape.piece(), x, y);
+                double score = heuristic.score(after, cleared,
+                    after.countPlacements(shape.piece().getPieceSet()), maxPlacements);
+                if(best == null || score > best.score()) {
+                    best = new Move(shape.swap(), shape.rotations(), shape.piece(), x, y, score);
+                }
+            }
+            return best;
+        }
+    }
+
+}
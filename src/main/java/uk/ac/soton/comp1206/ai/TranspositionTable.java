@@ -0,0 +1,318 @@
+package uk.ac.soton.comp1206.ai;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A fixed-size cache of search results, shared by every thread of a search and kept between searches.
+ *
+ * Each entry is keyed by a board hash combined with the current and next piece, and holds a value, the depth it was
+ * searched to and the best move found. Entries live in buckets of WAYS slots; a key can only be stored in its own
+ * bucket, and when the bucket is full an entry is evicted with the CLOCK algorithm, so entries which have been used
+ * since the hand last passed get a second chance. Buckets are guarded by a fixed set of locks, so threads only wait
+ * for each other when they touch buckets sharing a lock.
+ */
+public class TranspositionTable {
+
+    /**
+     * The size of a table when none is given, in megabytes
+     */
+    public static final int DEFAULT_MB = 16;
+
+    /**
+     * The number of slots in each bucket
+     */
+    public static final int WAYS = 4;
+
+    /**
+     * Move stored when there is no best move
+     */
+    public static final int NO_MOVE = -1;
+
+    /**
+     * The number of locks the buckets are shared between
+     */
+    private static final int STRIPES = 64;
+
+    /**
+     * Bytes used by one slot: key, value, move, depth and reference bit
+     */
+    private static final int SLOT_BYTES = Long.BYTES + Long.BYTES + Integer.BYTES + 2;
+
+    /**
+     * Key in each slot, 0 when the slot is empty
+     */
+    private final long[] keys;
+
+    /**
+     * Value in each slot
+     */
+    private final double[] values;
+
+    /**
+     * Best move in each slot
+     */
+    private final int[] moves;
+
+    /**
+     * Depth the value in each slot was searched to
+     */
+    private final byte[] depths;
+
+    /**
+     * Whether each slot has been used since the clock hand last passed it
+     */
+    private final boolean[] referenced;
+
+    /**
+     * Position of the clock hand in each bucket
+     */
+    private final byte[] hands;
+
+    /**
+     * Mask selecting a bucket from a key
+     */
+    private final int bucketMask;
+
+    /**
+     * Locks guarding the buckets, bucket i is guarded by lock i % STRIPES
+     */
+    private final Object[] locks = new Object[STRIPES];
+
+    /**
+     * Lookups that found a usable entry
+     */
+    private final LongAdder hits = new LongAdder();
+
+    /**
+     * Lookups that did not
+     */
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * Entries evicted to make room
+     */
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Create a table of DEFAULT_MB megabytes
+     */
+    public TranspositionTable() {
+        this(DEFAULT_MB);
+    }
+
+    /**
+     * Create a table using at most the given memory. The number of buckets is rounded down to a power of two.
+     * @param megabytes the memory to use, in megabytes
+     */
+    public TranspositionTable(int megabytes) {
+        if(megabytes < 1) {
+            throw new IllegalArgumentException("Size must be at least 1 MB: " + megabytes);
+        }
+        long bucketBytes = (long) WAYS * SLOT_BYTES + 1;
+        long buckets = Long.highestOneBit(((long) megabytes << 20) / bucketBytes);
+        buckets = Math.min(buckets, 1 << 28);
+        int slots = (int) buckets * WAYS;
+        this.keys = new long[slots];
+        this.values = new double[slots];
+        this.moves = new int[slots];
+        this.depths = new byte[slots];
+        this.referenced = new boolean[slots];
+        this.hands = new byte[(int) buckets];
+        this.bucketMask = (int) buckets - 1;
+        for(int i = 0; i < STRIPES; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    /**
+     * Combine a board hash with the current and next piece into a key
+     * @param boardHash the board hash
+     * @param current the current piece number
+     * @param next the next piece number
+     * @return the key, never 0
+     */
+    public static long key(long boardHash, int current, int next) {
+        long key = boardHash + (current | (long) next << 16) * 0xBF58476D1CE4E5B9L;
+        key ^= key >>> 31;
+        key *= 0x94D049BB133111EBL;
+        key ^= key >>> 29;
+        return key == 0 ? 1 : key;
+    }
+
+    /**
+     * Get the first slot of the bucket a key belongs in
+     * @param key the key
+     * @return the slot index
+     */
+    private int bucket(long key) {
+        return ((int) (key >>> 32) & bucketMask) * WAYS;
+    }
+
+    /**
+     * Get the lock guarding the bucket starting at a slot
+     * @param bucket the first slot of the bucket
+     * @return the lock
+     */
+    private Object lock(int bucket) {
+        return locks[(bucket / WAYS) & (STRIPES - 1)];
+    }
+
+    /**
+     * Look up the value of an entry searched at least as deep as asked for
+     * @param key the key
+     * @param depth the depth needed
+     * @return the value, or NaN if there is no such entry
+     */
+    public double getValue(long key, int depth) {
+        int bucket = bucket(key);
+        synchronized (lock(bucket)) {
+            for(int slot = bucket; slot < bucket + WAYS; slot++) {
+                if(keys[slot] == key && depths[slot] >= depth) {
+                    referenced[slot] = true;
+                    hits.increment();
+                    return values[slot];
+                }
+            }
+        }
+        misses.increment();
+        return Double.NaN;
+    }
+
+    /**
+     * Look up the best move of an entry, searched to any depth
+     * @param key the key
+     * @return the move, or NO_MOVE if there is no entry or it has no move
+     */
+    public int getMove(long key) {
+        int bucket = bucket(key);
+        synchronized (lock(bucket)) {
+            for(int slot = bucket; slot < bucket + WAYS; slot++) {
+                if(keys[slot] == key) {
+                    return moves[slot];
+                }
+            }
+        }
+        return NO_MOVE;
+    }
+
+    /**
+     * Store an entry, replacing any entry with the same key searched no deeper
+     * @param key the key
+     * @param depth the depth the value was searched to
+     * @param value the value
+     * @param move the best move, or NO_MOVE
+     */
+    public void put(long key, int depth, double value, int move) {
+        int bucket = bucket(key);
+        synchronized (lock(bucket)) {
+            int target = -1;
+            for(int slot = bucket; slot < bucket + WAYS; slot++) {
+                if(keys[slot] == key) {
+                    if(depths[slot] > depth) return;
+                    target = slot;
+                    break;
+                }
+                if(target == -1 && keys[slot] == 0) {
+                    target = slot;
+                }
+            }
+            if(target == -1) {
+                target = evict(bucket);
+            }
+            keys[target] = key;
+            values[target] = value;
+            moves[target] = move;
+            depths[target] = (byte) Math.min(depth, Byte.MAX_VALUE);
+            referenced[target] = true;
+        }
+    }
+
+    /**
+     * Choose a slot to evict from a full bucket by sweeping the clock hand past used slots until it finds one that
+     * has not been used since it was last passed. Must be called holding the bucket's lock.
+     * @param bucket the first slot of the bucket
+     * @return the slot to reuse
+     */
+    private int evict(int bucket) {
+        int hand = hands[bucket / WAYS];
+        while(referenced[bucket + hand]) {
+            referenced[bucket + hand] = false;
+            hand = (hand + 1) % WAYS;
+        }
+        hands[bucket / WAYS] = (byte) ((hand + 1) % WAYS);
+        evictions.increment();
+        return bucket + hand;
+    }
+
+    /**
+     * Remove every entry and reset the counters
+     */
+    public void clear() {
+        for(int stripe = 0; stripe < STRIPES; stripe++) {
+            synchronized (locks[stripe]) {
+                for(int bucket = stripe * WAYS; bucket < keys.length; bucket += STRIPES * WAYS) {
+                    for(int slot = bucket; slot < bucket + WAYS; slot++) {
+                        keys[slot] = 0;
+                        referenced[slot] = false;
+                    }
+                }
+            }
+        }
+        hits.reset();
+        misses.reset();
+        evictions.reset();
+    }
+
+    /**
+     * Get the number of entries the table can hold
+     * @return the number of slots
+     */
+    public int getCapacity() {
+        return keys.length;
+    }
+
+    /**
+     * Get the number of lookups that found a usable entry
+     * @return the number of hits
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * Get the number of lookups that did not find a usable entry
+     * @return the number of misses
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * Get the fraction of lookups that found a usable entry
+     * @return the hit rate, from 0 to 1
+     */
+    public double getHitRate() {
+        long hits = getHits();
+        long total = hits + getMisses();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    /**
+     * Get the number of entries evicted to make room for others
+     * @return the number of evictions
+     */
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * Describe the size and counters of the table
+     * @return summary of capacity, hit rate and evictions
+     */
+    @Override
+    public String toString() {
+        return String.format("%d entries, hit rate %.1f%%, %d evictions", getCapacity(), getHitRate() * 100,
+            getEvictions());
+    }
+
+}
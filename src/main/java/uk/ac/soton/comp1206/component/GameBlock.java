@@ -117,8 +117,9 @@ public class GameBlock extends Canvas {
         if(value.get() == 0) {
             paintEmpty();
         } else {
-            //If the block is not empty, paint with the colour represented by the value
-            paintColor(COLOURS[value.get()]);
+            //If the block is not empty, paint with the colour represented by the value, reusing colours for larger
+            //piece sets
+            paintColor(COLOURS[(value.get() - 1) % (COLOURS.length - 1) + 1]);
         }
 
         // Add lighting
@@ -199,6 +200,19 @@ public class GameBlock extends Canvas {
         gc.fillRect(0,0, width, height);
     }
 
+    /**
+     * Outline the block as part of a suggested move
+     */
+    public void hint(){
+
+        paint();
+        var gc = getGraphicsContext2D();
+        gc.setStroke(Color.YELLOW);
+        gc.setLineWidth(3);
+        gc.strokeRect(1.5,1.5, width - 3, height - 3);
+        gc.setLineWidth(1);
+    }
+
     /**
      * Fade the contents of a block to fully transparent
      * Called when a line is cleared
@@ -25,17 +25,27 @@ public class PieceBoard extends GameBoard {
 
 
   /**
-   * Draws a given piece on the board
+   * Draws a given piece on the board, centred. Blocks of pieces larger than the board are not drawn
    * @param gamePiece piece to draw on the board
    */
   public void DisplayPiece(GamePiece gamePiece){
     logger.info("Piece displayed:" + gamePiece);
-    int[][] blocks = gamePiece.getBlocks();
-    for(int i = 0; i < blocks.length; i++){
-      for (int j = 0; j < blocks[0].length; j++){
-        grid.set(i, j, blocks[i][j]);
+    int offsetX = grid.getCols() / 2 - gamePiece.getCentre();
+    int offsetY = grid.getRows() / 2 - gamePiece.getCentre();
+    grid.update(changes -> {
+      for(int i = 0; i < grid.getCols(); i++){
+        for (int j = 0; j < grid.getRows(); j++){
+          changes.set(i, j, 0);
+        }
       }
-    }
+      for(int cell = 0; cell < gamePiece.getCellCount(); cell++){
+        int x = gamePiece.getCellX(cell) + offsetX;
+        int y = gamePiece.getCellY(cell) + offsetY;
+        if(x >= 0 && x < grid.getCols() && y >= 0 && y < grid.getRows()){
+          changes.set(x, y, gamePiece.getValue());
+        }
+      }
+    });
   }
 
 
@@ -0,0 +1,404 @@
+package uk.ac.soton.comp1206.event;
+
+import java.util.ArrayList;
+import java.util.List;
+import uk.ac.soton.comp1206.game.GamePiece;
+import uk.ac.soton.comp1206.game.Grid;
+
+/**
+ * Passes the events of a game on to any number of subscribers.
+ *
+ * A subscriber can receive events straight away, or coalesced and delivered together each time flush() is called,
+ * normally once per animation pulse. Coalesced subscribers only see the latest pieces, stats and game loop, and one
+ * line clear covering every line cleared since the last flush. Events which cannot be merged, such as a piece being
+ * placed, are held in a fixed ring buffer so that recording them never allocates. If more of them arrive between
+ * flushes than the ring holds, the oldest are dropped.
+ */
+public class GameEventBus implements GameEventSink {
+
+  /**
+   * The number of unmerged events held between flushes
+   */
+  public static final int CAPACITY = 256;
+
+  /**
+   * Types of unmerged event held in the ring
+   */
+  private static final int PIECE_PLACED = 0;
+  private static final int PLACEMENT_FAILED = 1;
+  private static final int PIECE_ROTATED = 2;
+  private static final int PIECES_SWAPPED = 3;
+  private static final int LEVEL_UP = 4;
+  private static final int LIFE_LOST = 5;
+
+  /**
+   * Subscribers receiving events straight away
+   */
+  private final List<GameEventSink> immediate = new ArrayList<>();
+
+  /**
+   * Subscribers receiving events on flush
+   */
+  private final List<GameEventSink> coalesced = new ArrayList<>();
+
+  /**
+   * Type of each event in the ring
+   */
+  private final int[] types = new int[CAPACITY];
+
+  /**
+   * Piece of each event in the ring
+   */
+  private final GamePiece[] pieces = new GamePiece[CAPACITY];
+
+  /**
+   * Second piece of each event in the ring
+   */
+  private final GamePiece[] otherPieces = new GamePiece[CAPACITY];
+
+  /**
+   * First int argument of each event in the ring
+   */
+  private final int[] firstArgs = new int[CAPACITY];
+
+  /**
+   * Second int argument of each event in the ring
+   */
+  private final int[] secondArgs = new int[CAPACITY];
+
+  /**
+   * Index of the oldest event in the ring
+   */
+  private int head;
+
+  /**
+   * Number of events in the ring
+   */
+  private int size;
+
+  /**
+   * Number of events dropped because the ring was full
+   */
+  private long dropped;
+
+  /**
+   * Latest pieces waiting to be delivered
+   */
+  private boolean piecesPending;
+  private GamePiece currentPiece;
+  private GamePiece nextPiece;
+
+  /**
+   * Lines cleared since the last flush
+   */
+  private Grid linesGrid;
+  private long clearedRows;
+  private long clearedCols;
+
+  /**
+   * Latest stats waiting to be delivered
+   */
+  private boolean statsPending;
+  private int score, level, lives, multiplier, highScore;
+
+  /**
+   * Latest game loop waiting to be delivered
+   */
+  private boolean loopPending;
+  private long deadline;
+  private int delay;
+
+  /**
+   * Whether the game has ended since the last flush
+   */
+  private boolean endPending;
+
+  /**
+   * Add a subscriber which receives every event as it happens
+   * @param sink the subscriber
+   */
+  public void subscribe(GameEventSink sink) {
+    immediate.add(sink);
+  }
+
+  /**
+   * Add a subscriber which receives events coalesced, each time the bus is flushed
+   * @param sink the subscriber
+   */
+  public void subscribeCoalesced(GameEventSink sink) {
+    coalesced.add(sink);
+  }
+
+  /**
+   * Remove a subscriber
+   * @param sink the subscriber
+   */
+  public void unsubscribe(GameEventSink sink) {
+    immediate.remove(sink);
+    coalesced.remove(sink);
+  }
+
+  /**
+   * Get the number of events dropped because too many arrived between flushes
+   * @return number of events dropped
+   */
+  public long getDropped() {
+    return dropped;
+  }
+
+  /**
+   * Deliver everything that has happened since the last flush to the coalesced subscribers. Unmerged events are
+   * delivered first, in order, then the pieces, line clears, stats and game loop, and finally the end of the game.
+   */
+  public void flush() {
+    while(size > 0) {
+      int slot = head;
+      head = (head + 1) % CAPACITY;
+      size--;
+      GamePiece piece = pieces[slot];
+      GamePiece other = otherPieces[slot];
+      pieces[slot] = null;
+      otherPieces[slot] = null;
+      for(int i = 0; i < coalesced.size(); i++) {
+        deliver(coalesced.get(i), types[slot], piece, other, firstArgs[slot], secondArgs[slot]);
+      }
+    }
+
+    if(piecesPending) {
+      piecesPending = false;
+      for(int i = 0; i < coalesced.size(); i++) {
+        coalesced.get(i).piecesChanged(currentPiece, nextPiece);
+      }
+    }
+    if(linesGrid != null) {
+      Grid grid = linesGrid;
+      long rows = clearedRows;
+      long cols = clearedCols;
+      linesGrid = null;
+      clearedRows = 0;
+      clearedCols = 0;
+      for(int i = 0; i < coalesced.size(); i++) {
+        coalesced.get(i).linesCleared(grid, rows, cols);
+      }
+    }
+    if(statsPending) {
+      statsPending = false;
+      for(int i = 0; i < coalesced.size(); i++) {
+        coalesced.get(i).statsChanged(score, level, lives, multiplier, highScore);
+      }
+    }
+    if(loopPending) {
+      loopPending = false;
+      for(int i = 0; i < coalesced.size(); i++) {
+        coalesced.get(i).loopStarted(deadline, delay);
+      }
+    }
+    if(endPending) {
+      endPending = false;
+      for(int i = 0; i < coalesced.size(); i++) {
+        coalesced.get(i).gameEnded();
+      }
+    }
+  }
+
+  /**
+   * Deliver an unmerged event from the ring
+   * @param sink the subscriber
+   * @param type the type of event
+   * @param piece the piece
+   * @param other the second piece
+   * @param first the first int argument
+   * @param second the second int argument
+   */
+  private static void deliver(GameEventSink sink, int type, GamePiece piece, GamePiece other, int first, int second) {
+    switch (type) {
+      case PIECE_PLACED -> sink.piecePlaced(piece, first, second);
+      case PLACEMENT_FAILED -> sink.placementFailed(piece, first, second);
+      case PIECE_ROTATED -> sink.pieceRotated(piece);
+      case PIECES_SWAPPED -> sink.piecesSwapped(piece, other);
+      case LEVEL_UP -> sink.levelUp(first);
+      case LIFE_LOST -> sink.lifeLost(first);
+      default -> throw new IllegalStateException("Unknown event type " + type);
+    }
+  }
+
+  /**
+   * Hold an unmerged event for the coalesced subscribers, dropping the oldest if the ring is full
+   * @param type the type of event
+   * @param piece the piece
+   * @param other the second piece
+   * @param first the first int argument
+   * @param second the second int argument
+   */
+  private void record(int type, GamePiece piece, GamePiece other, int first, int second) {
+    if(coalesced.isEmpty()) return;
+    if(size == CAPACITY) {
+      head = (head + 1) % CAPACITY;
+      size--;
+      dropped++;
+    }
+    int slot = (head + size) % CAPACITY;
+    types[slot] = type;
+    pieces[slot] = piece;
+    otherPieces[slot] = other;
+    firstArgs[slot] = first;
+    secondArgs[slot] = second;
+    size++;
+  }
+
+  /**
+   * Pass on the current and next piece changing
+   * @param currentGamePiece the current game piece
+   * @param nextGamePiece the next game piece
+   */
+  @Override
+  public void piecesChanged(GamePiece currentGamePiece, GamePiece nextGamePiece) {
+    for(int i = 0; i < immediate.size(); i++) {
+      immediate.get(i).piecesChanged(currentGamePiece, nextGamePiece);
+    }
+    piecesPending = true;
+    currentPiece = currentGamePiece;
+    nextPiece = nextGamePiece;
+  }
+
+  /**
+   * Pass on a piece being placed
+   * @param piece the piece placed
+   * @param x the column it was centred on
+   * @param y the row it was centred on
+   */
+  @Override
+  public void piecePlaced(GamePiece piece, int x, int y) {
+    for(int i = 0; i < immediate.size(); i++) {
+      immediate.get(i).piecePlaced(piece, x, y);
+    }
+    record(PIECE_PLACED, piece, null, x, y);
+  }
+
+  /**
+   * Pass on a piece that could not be placed
+   * @param piece the piece
+   * @param x the column it was centred on
+   * @param y the row it was centred on
+   */
+  @Override
+  public void placementFailed(GamePiece piece, int x, int y) {
+    for(int i = 0; i < immediate.size(); i++) {
+      immediate.get(i).placementFailed(piece, x, y);
+    }
+    record(PLACEMENT_FAILED, piece, null, x, y);
+  }
+
+  /**
+   * Pass on the current piece being rotated
+   * @param piece the rotated piece
+   */
+  @Override
+  public void pieceRotated(GamePiece piece) {
+    for(int i = 0; i < immediate.size(); i++) {
+      immediate.get(i).pieceRotated(piece);
+    }
+    record(PIECE_ROTATED, piece, null, 0, 0);
+  }
+
+  /**
+   * Pass on the current and next piece being swapped
+   * @param currentGamePiece the current game piece
+   * @param nextGamePiece the next game piece
+   */
+  @Override
+  public void piecesSwapped(GamePiece currentGamePiece, GamePiece nextGamePiece) {
+    for(int i = 0; i < immediate.size(); i++) {
+      immediate.get(i).piecesSwapped(currentGamePiece, nextGamePiece);
+    }
+    record(PIECES_SWAPPED, currentGamePiece, nextGamePiece, 0, 0);
+  }
+
+  /**
+   * Pass on lines being cleared
+   * @param grid the grid the lines are cleared from
+   * @param clearedRows mask with bit y set for every cleared row
+   * @param clearedCols mask with bit x set for every cleared column
+   */
+  @Override
+  public void linesCleared(Grid grid, long clearedRows, long clearedCols) {
+    for(int i = 0; i < immediate.size(); i++) {
+      immediate.get(i).linesCleared(grid, clearedRows, clearedCols);
+    }
+    linesGrid = grid;
+    this.clearedRows |= clearedRows;
+    this.clearedCols |= clearedCols;
+  }
+
+  /**
+   * Pass on the stats changing
+   * @param score the score
+   * @param level the level
+   * @param lives the number of lives
+   * @param multiplier the multiplier
+   * @param highScore the high score
+   */
+  @Override
+  public void statsChanged(int score, int level, int lives, int multiplier, int highScore) {
+    for(int i = 0; i < immediate.size(); i++) {
+      immediate.get(i).statsChanged(score, level, lives, multiplier, highScore);
+    }
+    statsPending = true;
+    this.score = score;
+    this.level = level;
+    this.lives = lives;
+    this.multiplier = multiplier;
+    this.highScore = highScore;
+  }
+
+  /**
+   * Pass on the level changing
+   * @param level the new level
+   */
+  @Override
+  public void levelUp(int level) {
+    for(int i = 0; i < immediate.size(); i++) {
+      immediate.get(i).levelUp(level);
+    }
+    record(LEVEL_UP, null, null, level, 0);
+  }
+
+  /**
+   * Pass on a life being lost
+   * @param lives the number of lives left
+   */
+  @Override
+  public void lifeLost(int lives) {
+    for(int i = 0; i < immediate.size(); i++) {
+      immediate.get(i).lifeLost(lives);
+    }
+    record(LIFE_LOST, null, null, lives, 0);
+  }
+
+  /**
+   * Pass on a new game loop starting
+   * @param deadline the clock time, in nanoseconds, when the loop runs out
+   * @param delay the length of the loop in milliseconds
+   */
+  @Override
+  public void loopStarted(long deadline, int delay) {
+    for(int i = 0; i < immediate.size(); i++) {
+      immediate.get(i).loopStarted(deadline, delay);
+    }
+    loopPending = true;
+    this.deadline = deadline;
+    this.delay = delay;
+  }
+
+  /**
+   * Pass on the game ending
+   */
+  @Override
+  public void gameEnded() {
+    for(int i = 0; i < immediate.size(); i++) {
+      immediate.get(i).gameEnded();
+    }
+    endPending = true;
+  }
+
+}
@@ -0,0 +1,90 @@
+package uk.ac.soton.comp1206.event;
+
+import uk.ac.soton.comp1206.game.GamePiece;
+import uk.ac.soton.comp1206.game.Grid;
+
+/**
+ * Receives everything that happens in a GameEngine. Every event has an empty default, so a sink only needs to handle
+ * the events it is interested in.
+ */
+public interface GameEventSink {
+
+  /**
+   * Handle the current or next piece changing
+   * @param currentGamePiece the current game piece
+   * @param nextGamePiece the next game piece
+   */
+  default void piecesChanged(GamePiece currentGamePiece, GamePiece nextGamePiece) {}
+
+  /**
+   * Handle a piece being placed on the grid
+   * @param piece the piece placed
+   * @param x the column it was centred on
+   * @param y the row it was centred on
+   */
+  default void piecePlaced(GamePiece piece, int x, int y) {}
+
+  /**
+   * Handle a piece that could not be placed
+   * @param piece the piece
+   * @param x the column it was centred on
+   * @param y the row it was centred on
+   */
+  default void placementFailed(GamePiece piece, int x, int y) {}
+
+  /**
+   * Handle the current piece being rotated
+   * @param piece the rotated piece
+   */
+  default void pieceRotated(GamePiece piece) {}
+
+  /**
+   * Handle the current and next piece being swapped
+   * @param currentGamePiece the current game piece
+   * @param nextGamePiece the next game piece
+   */
+  default void piecesSwapped(GamePiece currentGamePiece, GamePiece nextGamePiece) {}
+
+  /**
+   * Handle lines about to be cleared from the grid
+   * @param grid the grid the lines are cleared from
+   * @param clearedRows mask with bit y set for every cleared row
+   * @param clearedCols mask with bit x set for every cleared column
+   */
+  default void linesCleared(Grid grid, long clearedRows, long clearedCols) {}
+
+  /**
+   * Handle the score, level, lives, multiplier or high score changing
+   * @param score the score
+   * @param level the level
+   * @param lives the number of lives
+   * @param multiplier the multiplier
+   * @param highScore the high score
+   */
+  default void statsChanged(int score, int level, int lives, int multiplier, int highScore) {}
+
+  /**
+   * Handle the level changing
+   * @param level the new level
+   */
+  default void levelUp(int level) {}
+
+  /**
+   * Handle a life being lost
+   * @param lives the number of lives left
+   */
+  default void lifeLost(int lives) {}
+
+  /**
+   * Handle a new game loop starting
+   * @param deadline the clock time, in nanoseconds, when the loop runs out
+   * @param delay the length of the loop in milliseconds
+   */
+  default void loopStarted(long deadline, int delay) {}
+
+  /**
+   * Handle the game ending
+   */
+  default void gameEnded() {}
+
+}
@@ -1,13 +0,0 @@
-package uk.ac.soton.comp1206.event;
-
-/**
- * Used to reset a game's timer
- */
-public interface GameLoopListener {
-
-  /**
-   * Used to handle resetting a games timer
-   */
-  public void gameLoop();
-
-}
@@ -0,0 +1,15 @@
+package uk.ac.soton.comp1206.event;
+
+/**
+ * Listens for the game loop timer moving on, once every frame
+ */
+public interface TimerListener {
+
+  /**
+   * Handle the timer moving on
+   * @param remaining the time left in the game loop in nanoseconds
+   * @param length the length of the game loop in nanoseconds
+   */
+  void timerUpdated(long remaining, long length);
+
+}
@@ -0,0 +1,62 @@
+package uk.ac.soton.comp1206.game;
+
+/**
+ * Something a player can do in a game. Actions are applied with GameEngine.apply(Action), or Game.apply(Action) when
+ * the game is on screen, and the outcome is returned packed into a long which can be read with ActionResult.
+ */
+public sealed interface Action permits Action.Place, Action.Rotate, Action.Swap, Action.Undo, Action.Redo {
+
+    /**
+     * Rotate the current piece once to the right
+     */
+    Rotate ROTATE_RIGHT = new Rotate(1);
+
+    /**
+     * Rotate the current piece once to the left
+     */
+    Rotate ROTATE_LEFT = new Rotate(3);
+
+    /**
+     * Swap the current and next piece
+     */
+    Swap SWAP = new Swap();
+
+    /**
+     * Step back to the state before the last action
+     */
+    Undo UNDO = new Undo();
+
+    /**
+     * Step forward to the state that was undone
+     */
+    Redo REDO = new Redo();
+
+    /**
+     * Place the current piece centred on a block
+     * @param x column
+     * @param y row
+     */
+    record Place(int x, int y) implements Action {}
+
+    /**
+     * Rotate the current piece 90 degrees right a number of times
+     * @param rotations number of rotations
+     */
+    record Rotate(int rotations) implements Action {}
+
+    /**
+     * Swap the current piece with the next piece
+     */
+    record Swap() implements Action {}
+
+    /**
+     * Step back to the state before the last action, if the game keeps a history
+     */
+    record Undo() implements Action {}
+
+    /**
+     * Step forward to the state that was undone, if the game keeps a history
+     */
+    record Redo() implements Action {}
+
+}
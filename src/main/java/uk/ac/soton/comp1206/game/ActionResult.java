@@ -0,0 +1,95 @@
+package uk.ac.soton.comp1206.game;
+
+/**
+ * Reads the outcome of an Action, packed into a single long so that batches of actions can be applied without
+ * creating a result object for each one.
+ *
+ * Bit 0 is set when the action was applied and bit 1 when the game ended. Bits 8-15 hold the number of lines cleared,
+ * bits 16-23 the number of lives lost, and the top 32 bits the points scored.
+ */
+public final class ActionResult {
+
+    /**
+     * Set when the action was applied
+     */
+    public static final long APPLIED = 1;
+
+    /**
+     * Set when the game ended
+     */
+    public static final long GAME_OVER = 1 << 1;
+
+    /**
+     * The result of an action which could not be applied
+     */
+    public static final long REJECTED = 0;
+
+    /**
+     * Results only hold static helpers
+     */
+    private ActionResult() {
+    }
+
+    /**
+     * Pack the outcome of an action
+     * @param applied whether the action was applied
+     * @param gameOver whether the game ended
+     * @param lines number of lines cleared
+     * @param livesLost number of lives lost
+     * @param points points scored
+     * @return the packed result
+     */
+    static long of(boolean applied, boolean gameOver, int lines, int livesLost, int points) {
+        return (applied ? APPLIED : 0)
+            | (gameOver ? GAME_OVER : 0)
+            | (lines & 0xFFL) << 8
+            | (livesLost & 0xFFL) << 16
+            | (long) points << 32;
+    }
+
+    /**
+     * Check whether an action was applied
+     * @param result the packed result
+     * @return whether it was applied
+     */
+    public static boolean isApplied(long result) {
+        return (result & APPLIED) != 0;
+    }
+
+    /**
+     * Check whether the game ended
+     * @param result the packed result
+     * @return whether the game ended
+     */
+    public static boolean isGameOver(long result) {
+        return (result & GAME_OVER) != 0;
+    }
+
+    /**
+     * Get the number of lines cleared
+     * @param result the packed result
+     * @return number of lines
+     */
+    public static int getLines(long result) {
+        return (int) (result >>> 8 & 0xFF);
+    }
+
+    /**
+     * Get the number of lives lost
+     * @param result the packed result
+     * @return number of lives
+     */
+    public static int getLivesLost(long result) {
+        return (int) (result >>> 16 & 0xFF);
+    }
+
+    /**
+     * Get the points scored
+     * @param result the packed result
+     * @return the points
+     */
+    public static int getPoints(long result) {
+        return (int) (result >>> 32);
+    }
+
+}
@@ -0,0 +1,105 @@
+package uk.ac.soton.comp1206.game;
+
+import java.util.Arrays;
+
+/**
+ * Deals pieces which fit on the board more often than pieces which do not. Each time the buffer is refilled, every
+ * piece that can be placed somewhere, in any rotation, is weighted more heavily. Pieces are still worked out a few at a
+ * time, so a small batch keeps them close to the state of the board.
+ */
+public class AdaptivePieceGenerator extends WeightedPieceGenerator {
+
+    /**
+     * How much more likely a piece that fits is than one that does not, when none is given
+     */
+    public static final double DEFAULT_BIAS = 3;
+
+    /**
+     * The number of pieces worked out at a time when none is given
+     */
+    public static final int DEFAULT_ADAPTIVE_BATCH = 4;
+
+    /**
+     * How much more likely a piece that fits is than one that does not
+     */
+    private final double bias;
+
+    /**
+     * The weight of each piece for the current board
+     */
+    private final double[] weights = new double[GamePiece.PIECES];
+
+    /**
+     * The grid of the game being played
+     */
+    private Grid grid;
+
+    /**
+     * Create a generator with the default bias and batch
+     */
+    public AdaptivePieceGenerator() {
+        this(DEFAULT_BIAS, DEFAULT_ADAPTIVE_BATCH);
+    }
+
+    /**
+     * Create a generator
+     * @param bias how much more likely a piece that fits is than one that does not
+     * @param batch the number of pieces to work out at a time
+     */
+    public AdaptivePieceGenerator(double bias, int batch) {
+        super(filled(1), batch);
+        if(!(bias >= 1) || Double.isInfinite(bias)) {
+            throw new IllegalArgumentException("Bias must be at least 1: " + bias);
+        }
+        this.bias = bias;
+    }
+
+    /**
+     * Make an array of equal weights
+     * @param weight the weight of every piece
+     * @return the weights
+     */
+    private static double[] filled(double weight) {
+        double[] weights = new double[GamePiece.PIECES];
+        Arrays.fill(weights, weight);
+        return weights;
+    }
+
+    /**
+     * Watch the grid of the new game
+     * @param grid the grid the game is played on
+     * @param seed the seed of the game
+     */
+    @Override
+    public void start(Grid grid, long seed) {
+        super.start(grid, seed);
+        this.grid = grid;
+    }
+
+    /**
+     * Weight the pieces for the board as it is now, then fill the buffer
+     */
+    @Override
+    protected void refill() {
+        if(grid != null) {
+            for(int piece = 0; piece < weights.length; piece++) {
+                weights[piece] = fits(piece) ? bias : 1;
+            }
+            setWeights(weights);
+        }
+        super.refill();
+    }
+
+    /**
+     * Check whether a piece can be placed anywhere on the board in any rotation
+     * @param piece the piece number
+     * @return whether it fits
+     */
+    private boolean fits(int piece) {
+        for(int rotation = 0; rotation < GamePiece.ROTATIONS; rotation++) {
+            if(grid.hasLegalPlacement(GamePiece.createPiece(piece, rotation))) return true;
+        }
+        return false;
+    }
+
+}
@@ -0,0 +1,69 @@
+package uk.ac.soton.comp1206.game;
+
+/**
+ * Deals every piece once, in a shuffled order, before any piece is dealt again. This keeps the pieces even over a
+ * game and limits how long the player can go without seeing a particular piece.
+ */
+public class BagPieceGenerator extends BufferedPieceGenerator {
+
+    /**
+     * One of each piece number, shuffled
+     */
+    private final int[] bag = new int[GamePiece.PIECES];
+
+    /**
+     * Number of pieces left in the bag
+     */
+    private int left;
+
+    /**
+     * Create a generator working out DEFAULT_BATCH pieces at a time
+     */
+    public BagPieceGenerator() {
+        this(DEFAULT_BATCH);
+    }
+
+    /**
+     * Create a generator
+     * @param batch the number of pieces to work out at a time
+     */
+    public BagPieceGenerator(int batch) {
+        super(batch);
+        for(int i = 0; i < bag.length; i++) {
+            bag[i] = i;
+        }
+    }
+
+    /**
+     * Start a new game with a full bag
+     * @param grid the grid the game is played on
+     * @param seed the seed of the game
+     */
+    @Override
+    public void start(Grid grid, long seed) {
+        super.start(grid, seed);
+        left = 0;
+        for(int i = 0; i < bag.length; i++) {
+            bag[i] = i;
+        }
+    }
+
+    /**
+     * Take the next piece from the bag, shuffling a new bag when it is empty
+     * @return the piece number
+     */
+    @Override
+    protected int generate() {
+        if(left == 0) {
+            for(int i = bag.length - 1; i > 0; i--) {
+                int j = random.nextInt(i + 1);
+                int swap = bag[i];
+                bag[i] = bag[j];
+                bag[j] = swap;
+            }
+            left = bag.length;
+        }
+        return bag[--left];
+    }
+
+}
@@ -0,0 +1,121 @@
+package uk.ac.soton.comp1206.game;
+
+import java.util.SplittableRandom;
+
+/**
+ * A PieceGenerator which works out its pieces in batches and holds them in a ring buffer until they are dealt, so
+ * dealing a piece is just an array read. Subclasses choose each piece in generate(), or override refill() to fill the
+ * buffer some other way.
+ */
+public abstract class BufferedPieceGenerator implements PieceGenerator {
+
+    /**
+     * The number of pieces worked out at a time when none is given
+     */
+    public static final int DEFAULT_BATCH = 64;
+
+    /**
+     * Source of random numbers, reseeded at the start of each game
+     */
+    protected SplittableRandom random = new SplittableRandom();
+
+    /**
+     * Piece numbers waiting to be dealt
+     */
+    private final int[] upcoming;
+
+    /**
+     * Index of the next piece to deal
+     */
+    private int head;
+
+    /**
+     * Number of pieces waiting to be dealt
+     */
+    private int size;
+
+    /**
+     * Create a generator holding up to a given number of pieces
+     * @param capacity the size of the buffer, which is also the number of pieces worked out at a time
+     */
+    protected BufferedPieceGenerator(int capacity) {
+        if(capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be at least 1: " + capacity);
+        }
+        this.upcoming = new int[capacity];
+    }
+
+    /**
+     * Forget any pieces worked out for a previous game and reseed the random numbers
+     * @param grid the grid the game is played on
+     * @param seed the seed of the game
+     */
+    @Override
+    public void start(Grid grid, long seed) {
+        random = new SplittableRandom(seed);
+        head = 0;
+        size = 0;
+    }
+
+    /**
+     * Deal the next piece, refilling the buffer first if it is empty
+     * @return the piece
+     */
+    @Override
+    public GamePiece next() {
+        if(size == 0) {
+            refill();
+            if(size == 0) {
+                throw new IllegalStateException("No pieces to deal");
+            }
+        }
+        int piece = upcoming[head];
+        head = (head + 1) % upcoming.length;
+        size--;
+        return GamePiece.createPiece(piece);
+    }
+
+    /**
+     * Fill the buffer with newly generated pieces
+     */
+    protected void refill() {
+        while(size < upcoming.length) {
+            push(generate());
+        }
+    }
+
+    /**
+     * Add a piece to the end of the buffer
+     * @param piece the piece number
+     * @return whether there was room for it
+     */
+    protected boolean push(int piece) {
+        if(size == upcoming.length) return false;
+        upcoming[(head + size) % upcoming.length] = piece;
+        size++;
+        return true;
+    }
+
+    /**
+     * Choose the piece after the ones already in the buffer
+     * @return the piece number
+     */
+    protected abstract int generate();
+
+    /**
+     * Get the number of pieces waiting to be dealt
+     * @return the number of pieces
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Get the most pieces the buffer can hold
+     * @return the capacity
+     */
+    public int getCapacity() {
+        return upcoming.length;
+    }
+
+}
@@ -1,28 +1,28 @@
 package uk.ac.soton.comp1206.game;
 
 import java.io.File;
-import java.io.IOException;
 import java.nio.file.Files;
-import java.util.HashSet;
+import java.util.Arrays;
 import java.util.List;
-import javafx.animation.KeyFrame;
-import javafx.animation.Timeline;
+import javafx.animation.AnimationTimer;
 import javafx.beans.property.SimpleIntegerProperty;
-import javafx.util.Duration;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import uk.ac.soton.comp1206.component.GameBlock;
-import java.util.Random;
-import uk.ac.soton.comp1206.component.GameBlockCoordinate;
-import uk.ac.soton.comp1206.event.GameEndListener;
-import uk.ac.soton.comp1206.event.GameLoopListener;
-import uk.ac.soton.comp1206.event.LineClearedListener;
-import uk.ac.soton.comp1206.event.NextPieceListener;
+import uk.ac.soton.comp1206.event.GameEventBus;
+import uk.ac.soton.comp1206.event.GameEventSink;
+import uk.ac.soton.comp1206.event.TimerListener;
 import uk.ac.soton.comp1206.scene.Multimedia;
 
 /**
- * The Game class handles the main logic, state and properties of the TetrECS game. Methods to manipulate the game state
- * and to handle actions made by the player should take place inside this class.
+ * The Game class connects a GameEngine to the user interface. The rules and state of the game live in the engine;
+ * this class forwards the player's actions to it, passes the engine's events on through a GameEventBus, mirrors its
+ * stats into bindable properties, plays sounds and runs the game loop timer on the JavaFX thread.
+ *
+ * A single AnimationTimer runs for the whole game. Every frame it applies the player's queued input, lets the engine
+ * check its deadline and tells the timer listener how much of the loop is left, so life loss and the timer bar both
+ * follow the same deadline. It also flushes the event bus, so coalesced subscribers such as the scene, the sounds and
+ * the properties are updated once per frame however many events happened in it.
  */
 public class Game {
 
@@ -31,34 +31,24 @@ public class Game {
     Multimedia audioPlayer;
 
     /**
-     * Number of rows
+     * The engine running the game
      */
-    protected final int rows;
+    protected final GameEngine engine;
 
     /**
-     * Number of columns
+     * The timer used to track how long a player has to place a piece, run once every frame
      */
-    protected final int cols;
-
-    /**
-     * The grid model linked to the game
-     */
-    protected final Grid grid;
-
-    /**
-     * The timer used to track how long a player has to place a piece
-     */
-    public Timeline timer;
-
-    /**
-     * The current game piece
-     */
-    protected GamePiece currentPiece;
-
-    /**
-     * The next game piece
-     */
-    protected GamePiece nextPiece;
+    private final AnimationTimer timer = new AnimationTimer() {
+        @Override
+        public void handle(long now) {
+            input.process(engine);
+            engine.tick();
+            events.flush();
+            if (engine.isRunning() && timerListener != null){
+                timerListener.timerUpdated(engine.getRemaining(), engine.getLoopLength());
+            }
+        }
+    };
 
 
     // Bindable properties used to bind the game state to the user interface
@@ -76,7 +66,7 @@ public class Game {
     /**
      * Property representing the lives
      */
-    public SimpleIntegerProperty lives = new SimpleIntegerProperty(3);
+    public SimpleIntegerProperty lives = new SimpleIntegerProperty(GameEngine.START_LIVES);
 
     /**
      * Property representing the multiplier
@@ -89,37 +79,40 @@ public class Game {
     public SimpleIntegerProperty highscore = new SimpleIntegerProperty(0);
 
     /**
-     * The next piece listener
-     */
-    public NextPieceListener nextPieceListener;
-
-    /**
-     * The line cleared listener
+     * The player's input waiting to be applied
      */
-    public LineClearedListener lineClearedListener;
+    protected final InputQueue input = new InputQueue(GameClock.SYSTEM);
 
     /**
-     * The game loop listener
+     * The bus the engine's events are published on
      */
-    public GameLoopListener gameLoopListener;
+    protected final GameEventBus events = new GameEventBus();
 
     /**
-     * The game end listener
+     * The timer listener
      */
-    public GameEndListener gameEndListener;
+    public TimerListener timerListener;
 
 
     /**
-     * Create a new game with the specified rows and columns. Creates a corresponding grid model.
+     * Create a new game with the specified rows and columns. Creates a corresponding engine and grid model.
      * @param cols number of columns
      * @param rows number of rows
      */
     public Game(int cols, int rows) {
-        this.cols = cols;
-        this.rows = rows;
+        this(cols, rows, new UniformPieceGenerator());
+    }
 
-        //Create a new grid model to represent the game state
-        this.grid = new Grid(cols,rows);
+    /**
+     * Create a new game with the specified rows and columns, dealing pieces from the given generator
+     * @param cols number of columns
+     * @param rows number of rows
+     * @param generator where new pieces come from
+     */
+    public Game(int cols, int rows, PieceGenerator generator) {
+        this.engine = new GameEngine(cols, rows, GameClock.SYSTEM, generator);
+        this.engine.setEventSink(events);
+        events.subscribeCoalesced(display);
     }
 
     /**
@@ -135,166 +128,160 @@ public class Game {
      * Initialise a new game and set up anything that needs to be done at the start
      */
     public void initialiseGame() {
-        logger.info("Initialising game");
-        this.currentPiece = this.spawnPiece();
-        this.nextPiece = this.spawnPiece();
+        logger.info("Initialising game with seed {}", engine.getSeed());
         highscore();
-        nextPieceListener.nextPiece(this.currentPiece, this.nextPiece);
-        gameLoopListener.gameLoop();
-        timer();
+        engine.start();
+        timer.start();
     }
 
     /**
-     * Handle what should happen when a particular block is clicked
-     * @param gameBlock the block that was clicked
+     * Stop the game and its timer
      */
-    public void blockClicked(GameBlock gameBlock) {
-        //Get the position of this block
-        int x = gameBlock.getX();
-        int y = gameBlock.getY();
+    public void stop() {
+        engine.stop();
+        timer.stop();
+    }
 
-        // If the piece can be played
-        if (grid.canPlayPiece(this.currentPiece,x,y)){
-            audioPlayer.playAudio("place.wav");
-            grid.playPiece(this.currentPiece,x,y);
-            this.nextPiece();
-            this.afterPiece();
-            nextPieceListener.nextPiece(this.currentPiece, this.nextPiece);
-            timer();
-        } else {
-            audioPlayer.playAudio("fail.wav");
-        }
+    /**
+     * Pause the game, stopping the frame timer until it is resumed
+     */
+    public void pause() {
+        if (!engine.isRunning() || engine.isPaused()) return;
+        engine.pause();
+        timer.stop();
     }
 
     /**
-     * Generate a random game piece
-     * @return the generated game piece
+     * Resume a paused game with the time it had left
      */
-    protected GamePiece spawnPiece(){
-        Random random = new Random();
-        return GamePiece.createPiece(random.nextInt(15));
+    public void resume() {
+        if (!engine.isRunning() || !engine.isPaused()) return;
+        engine.resume();
+        timer.start();
     }
 
     /**
-     * Assign new pieces to the current and next piece variables
+     * Apply a player's action
+     * @param action the action
+     * @return the outcome, read with ActionResult
      */
-    public void nextPiece(){
-        this.currentPiece = this.nextPiece;
-        this.nextPiece = this.spawnPiece();
+    public long apply(Action action) {
+        return engine.apply(action);
     }
 
     /**
-     * Rotate the current piece 90 degrees right
+     * Apply a list of actions in order, stopping early if the game ends
+     * @param actions the actions
+     * @return the outcome of each action applied, read with ActionResult
      */
-    public void rotateCurrentPiece(){
-        currentPiece.rotate();
-        nextPieceListener.nextPiece(this.currentPiece, this.nextPiece);
-        audioPlayer.playAudio("rotate.wav");
+    public long[] applyAll(List<? extends Action> actions) {
+        long[] results = new long[actions.size()];
+        int count = engine.applyAll(actions, results);
+        return count == results.length ? results : Arrays.copyOf(results, count);
+    }
 
+    /**
+     * Set the seed deciding the pieces dealt, so the game can be reproduced. Must be called before the game starts.
+     * @param seed the seed
+     */
+    public void setSeed(long seed) {
+        engine.setSeed(seed);
     }
 
     /**
-     * Swap the current piece with the next piece
+     * Get the seed deciding the pieces dealt
+     * @return the seed
      */
-    public void swapCurrentPiece(){
-        GamePiece temp = this.currentPiece;
-        this.currentPiece = this.nextPiece;
-        this.nextPiece = temp;
-        nextPieceListener.nextPiece(this.currentPiece, this.nextPiece);
+    public long getSeed() {
+        return engine.getSeed();
+    }
 
-        audioPlayer.playAudio("rotate.wav");
+    /**
+     * Let the player undo and redo their actions, keeping a fixed number of past states
+     * @param capacity the number of states to keep
+     */
+    public void enableUndo(int capacity) {
+        engine.setHistory(new GameHistory(capacity));
     }
 
     /**
-     * Starts a new timer and resets the game loop
-     * This method is called every game loop until the player quits or runs out of lives
+     * Queue a player's action to be applied on the next frame
+     * @param action the action
      */
-    public void timer(){
-        if (timer != null){timer.stop();}
-        gameLoopListener.gameLoop();
-        timer = new Timeline(new KeyFrame(Duration.millis(calculateDelay()), e -> {
-            lives.set(lives.getValue()-1);
-            nextPiece();
-            nextPieceListener.nextPiece(currentPiece, nextPiece);
-            multiplier.set(1);
+    public void queue(Action action) {
+        input.offer(action);
+    }
 
-            audioPlayer.playAudio("lifelose.wav");
+    /**
+     * Record that a frame showing the latest applied input has been drawn
+     */
+    public void frameShown() {
+        input.frameShown();
+    }
 
-            if(lives.getValue() < 0){
-                gameEndListener.gameEnded();
-            } else {
-                timer();
-            }
-        }));
-        timer.play();
+    /**
+     * Handle what should happen when a particular block is clicked
+     * @param gameBlock the block that was clicked
+     */
+    public void blockClicked(GameBlock gameBlock) {
+        apply(new Action.Place(gameBlock.getX(), gameBlock.getY()));
     }
 
     /**
-     * Performs tasks that need to be completed after a piece has been placed
-     * Determines if any rows have been cleared
-     * Updates players score, level and multiplier
+     * Rotate the current piece 90 degrees right
      */
-    public void afterPiece(){
-        int linesToClear = 0;
-        HashSet<GameBlockCoordinate> blockSet = new HashSet<>();
+    public void rotateCurrentPiece(){
+        apply(Action.ROTATE_RIGHT);
+    }
 
-        //Check if any lines have been cleared
-        for(int i = 0; i < getCols(); i++){
-            if(grid.get(0, i) != 0 && grid.get(1, i) != 0 && grid.get(2, i) != 0 && grid.get(3, i) != 0 && grid.get(4, i) != 0){
-                linesToClear += 1;
-                blockSet.add(new GameBlockCoordinate(0, i));
-                blockSet.add(new GameBlockCoordinate(1, i));
-                blockSet.add(new GameBlockCoordinate(2, i));
-                blockSet.add(new GameBlockCoordinate(3, i));
-                blockSet.add(new GameBlockCoordinate(4, i));
-            }
-            if(grid.get(i,0) != 0 && grid.get(i,1) != 0 && grid.get(i,2) != 0 && grid.get(i,3) != 0 && grid.get(i,4) != 0) {
-                linesToClear += 1;
-                blockSet.add(new GameBlockCoordinate(i,0));
-                blockSet.add(new GameBlockCoordinate(i,1));
-                blockSet.add(new GameBlockCoordinate(i,2));
-                blockSet.add(new GameBlockCoordinate(i,3));
-                blockSet.add(new GameBlockCoordinate(i,4));
-            }
-        }
+    /**
+     * Swap the current piece with the next piece
+     */
+    public void swapCurrentPiece(){
+        apply(Action.SWAP);
+    }
 
-        // Update score, multiplier and level
-        score(linesToClear, blockSet.size());
-        multiplier(linesToClear);
-        level();
-        highscore();
+    /**
+     * Lose a life and move on to the next piece
+     */
+    public void loseLife(){
+        engine.loseLife();
+    }
 
-        // Clear any completed lines from the board
-        lineClearedListener.lineCleared(blockSet);
-        for(GameBlockCoordinate block : blockSet){
-            grid.set(block.getX(), block.getY(), 0);
-        }
+    /**
+     * Check whether the current or next piece, in any orientation, can be placed anywhere on the board
+     * @return whether the player has a move left
+     */
+    public boolean canMove(){
+        return engine.canMove();
     }
 
     /**
-     * Update the score based on how many lines and blocks are cleared
-     * @param lines The number of lines cleared
-     * @param blocks The number of blocks cleared
+     * Work out what placing a piece would do, without changing the game. The returned evaluation is reused and is
+     * overwritten by the next call, so should be read straight away.
+     * @param piece the piece to place
+     * @param x the column to place it on
+     * @param y the row to place it on
+     * @return the evaluation
      */
-    protected void score(int lines, int blocks){
-        score.set(score.get() + (multiplier.getValue() * lines * blocks * 10));
+    public MoveEvaluation evaluate(GamePiece piece, int x, int y){
+        return engine.evaluate(piece, x, y);
     }
 
     /**
-     * Updates the multiplier
-     * @param lines The number of lines cleared
+     * Work out what placing a piece would do, without changing the game
+     * @param piece the piece to place
+     * @param x the column to place it on
+     * @param y the row to place it on
+     * @param result the evaluation to fill in
+     * @return the result
      */
-    public void multiplier(int lines){
-        if (lines > 0){
-            multiplier.set(multiplier.get() + 1);
-        } else {
-            multiplier.set(1);
-        }
+    public MoveEvaluation evaluate(GamePiece piece, int x, int y, MoveEvaluation result){
+        return engine.evaluate(piece, x, y, result);
     }
 
     /**
-     * Loads the current high score from an external file
-     * And updates it if the player is beating it
+     * Loads the current high score from an external file, once at the start of a game
      */
     public void highscore(){
         File scoreFile = new File("Scores.txt");
@@ -303,36 +290,110 @@ public class Game {
             scoreFile.createNewFile();
             List<String> scores = Files.readAllLines(scoreFile.toPath());
             if (!scores.isEmpty()){
-                highscore.set(Integer.parseInt(scores.get(0).split(":")[1]));
+                engine.setHighScore(Integer.parseInt(scores.get(0).split(":")[1]));
             }
         } catch (Exception e){
             throw new RuntimeException();
         }
-        // Update it if necessary
-        if (score.getValue() > highscore.getValue()){
-            highscore.set(score.getValue());
-        }
     }
 
     /**
-     * Update the players level based on their score
+     * Calculate the amount of time the player has to place a piece
+     * @return The amount of time in milliseconds
+     */
+    public int calculateDelay(){
+        return engine.calculateDelay();
+    }
+
+    /**
+     * Plays sounds and keeps the bindable properties up to date, once per frame
      */
-    public void level(){
-        int lastLevel = level.get();
-        int currentLevel = (int) Math.floor(score.divide(1000).get());
-        // If the level increases play audio
-        if(lastLevel != currentLevel){
+    private final GameEventSink display = new GameEventSink() {
+        @Override
+        public void piecePlaced(GamePiece piece, int x, int y){
+            audioPlayer.playAudio("place.wav");
+        }
+
+        @Override
+        public void placementFailed(GamePiece piece, int x, int y){
+            audioPlayer.playAudio("fail.wav");
+        }
+
+        @Override
+        public void pieceRotated(GamePiece piece){
+            audioPlayer.playAudio("rotate.wav");
+        }
+
+        @Override
+        public void piecesSwapped(GamePiece currentGamePiece, GamePiece nextGamePiece){
+            audioPlayer.playAudio("rotate.wav");
+        }
+
+        @Override
+        public void statsChanged(int score, int level, int lives, int multiplier, int highScore){
+            Game.this.score.set(score);
+            Game.this.level.set(level);
+            Game.this.lives.set(lives);
+            Game.this.multiplier.set(multiplier);
+            Game.this.highscore.set(highScore);
+        }
+
+        @Override
+        public void levelUp(int level){
             audioPlayer.playAudio("level.wav");
         }
-        level.set(currentLevel);
+
+        @Override
+        public void lifeLost(int lives){
+            audioPlayer.playAudio("lifelose.wav");
+        }
+
+        @Override
+        public void gameEnded(){
+            timer.stop();
+            logger.info("Input to model latency: {}", input.getModelLatency());
+            logger.info("Input to frame latency: {}", input.getFrameLatency());
+        }
+    };
+
+    /**
+     * Get the bus the game's events are published on
+     * @return the event bus
+     */
+    public GameEventBus getEvents() {
+        return events;
     }
 
     /**
-     * Calculate the amount of time the player has to place a piece
-     * @return The amount of time in milliseconds
+     * Get the player's input waiting to be applied
+     * @return the input queue
      */
-    public int calculateDelay(){
-        return Math.max(12500 - (500 * level.get()), 2500);
+    public InputQueue getInput() {
+        return input;
+    }
+
+    /**
+     * Get the engine running this game
+     * @return the engine
+     */
+    public GameEngine getEngine() {
+        return engine;
+    }
+
+    /**
+     * Get the piece the player is currently placing
+     * @return the current piece
+     */
+    public GamePiece getCurrentPiece() {
+        return engine.getCurrentPiece();
+    }
+
+    /**
+     * Get the piece that follows the current piece
+     * @return the next piece
+     */
+    public GamePiece getNextPiece() {
+        return engine.getNextPiece();
     }
 
     /**
@@ -340,7 +401,7 @@ public class Game {
      * @return game grid model
      */
     public Grid getGrid() {
-        return grid;
+        return engine.getGrid();
     }
 
     /**
@@ -348,7 +409,7 @@ public class Game {
      * @return number of columns
      */
     public int getCols() {
-        return cols;
+        return engine.getCols();
     }
 
     /**
@@ -356,7 +417,7 @@ public class Game {
      * @return number of rows
      */
     public int getRows() {
-        return rows;
+        return engine.getRows();
     }
 
     /**
@@ -400,35 +461,11 @@ public class Game {
     }
 
     /**
-     * Sets the next piece listener
-     * @param nextPieceListener nextPieceListener from challengeScene
-     */
-    public void setNextPieceListener(NextPieceListener nextPieceListener) {
-        this.nextPieceListener = nextPieceListener;
-    }
-
-    /**
-     * Sets the line cleared listener
-     * @param lineClearedListener lineClearedListener from challengeScene
-     */
-    public void setLineClearedListener(LineClearedListener lineClearedListener) {
-        this.lineClearedListener = lineClearedListener;
-    }
-
-    /**
-     * Sets the game loop listener
-     * @param gameLoopListener gameLoopListener from challengeScene
-     */
-    public void setGameLoopListener(GameLoopListener gameLoopListener){
-        this.gameLoopListener = gameLoopListener;
-    }
-
-    /**
-     * Sets the game end listener
-     * @param gameEndListener gameEndListener from challengeScene
+     * Sets the timer listener
+     * @param timerListener timerListener from challengeScene
      */
-    public void setGameEndListener(GameEndListener gameEndListener){
-        this.gameEndListener = gameEndListener;
+    public void setTimerListener(TimerListener timerListener){
+        this.timerListener = timerListener;
     }
 
 }
@@ -0,0 +1,20 @@
+package uk.ac.soton.comp1206.game;
+
+/**
+ * The source of time for a GameEngine. Games shown on screen use the system clock, while simulations can supply their
+ * own clock and move it forward as fast as they like.
+ */
+public interface GameClock {
+
+    /**
+     * A clock reading System.nanoTime()
+     */
+    GameClock SYSTEM = System::nanoTime;
+
+    /**
+     * Get the current time. Only the difference between two readings is meaningful.
+     * @return the time in nanoseconds
+     */
+    long nanoTime();
+
+}
@@ -0,0 +1,713 @@
+package uk.ac.soton.comp1206.game;
+
+import java.util.List;
+import uk.ac.soton.comp1206.event.GameEventSink;
+
+/**
+ * The rules of TetrECS with no dependency on JavaFX. The engine holds the grid, the current and next piece and the
+ * player's stats as plain values, reads time from a GameClock and reports everything that happens to a GameEventSink.
+ *
+ * Nothing is scheduled by the engine itself. Each game loop has a single deadline on the clock, and whoever drives the
+ * engine calls tick() to let it run out, so the same engine can be shown on screen by Game or run headless as fast as
+ * the clock is moved forward.
+ */
+public class GameEngine {
+
+    /**
+     * The number of lives a game starts with
+     */
+    public static final int START_LIVES = 3;
+
+    /**
+     * A sink which ignores every event
+     */
+    private static final GameEventSink NO_EVENTS = new GameEventSink() {};
+
+    /**
+     * Number of rows
+     */
+    private final int rows;
+
+    /**
+     * Number of columns
+     */
+    private final int cols;
+
+    /**
+     * The grid model linked to the game
+     */
+    private final Grid grid;
+
+    /**
+     * The clock the game loop is timed against
+     */
+    private final GameClock clock;
+
+    /**
+     * Where new pieces come from
+     */
+    private final PieceGenerator generator;
+
+    /**
+     * Where events are sent
+     */
+    private GameEventSink sink = NO_EVENTS;
+
+    /**
+     * The current game piece
+     */
+    private GamePiece currentPiece;
+
+    /**
+     * The next game piece
+     */
+    private GamePiece nextPiece;
+
+    /**
+     * The seed deciding the pieces dealt
+     */
+    private long seed = Seeds.random();
+
+    /**
+     * The score
+     */
+    private int score;
+
+    /**
+     * The level
+     */
+    private int level;
+
+    /**
+     * The number of lives
+     */
+    private int lives = START_LIVES;
+
+    /**
+     * The multiplier
+     */
+    private int multiplier = 1;
+
+    /**
+     * The high score
+     */
+    private int highScore;
+
+    /**
+     * The number of lines cleared by the last piece placed
+     */
+    private int lastLines;
+
+    /**
+     * The clock time, in nanoseconds, when the current game loop runs out
+     */
+    private long deadline;
+
+    /**
+     * The length of the current game loop in nanoseconds
+     */
+    private long loopLength;
+
+    /**
+     * The time left in the game loop when it was paused
+     */
+    private long pausedRemaining;
+
+    /**
+     * Whether the game loop is paused
+     */
+    private boolean paused;
+
+    /**
+     * Whether the game has started and not yet ended or been stopped
+     */
+    private boolean running;
+
+    /**
+     * States to undo and redo through, or null if the game keeps no history
+     */
+    private GameHistory history;
+
+    /**
+     * Reused result of evaluate(GamePiece, int, int)
+     */
+    private final MoveEvaluation preview = new MoveEvaluation();
+
+    /**
+     * Create a new engine with the specified rows and columns. Creates a corresponding grid model.
+     * @param cols number of columns
+     * @param rows number of rows
+     * @param clock the clock the game loop is timed against
+     * @param generator where new pieces come from
+     */
+    public GameEngine(int cols, int rows, GameClock clock, PieceGenerator generator) {
+        this.cols = cols;
+        this.rows = rows;
+        this.clock = clock;
+        this.generator = generator;
+
+        //Create a new grid model to represent the game state
+        this.grid = new Grid(cols,rows);
+    }
+
+    /**
+     * Set where events are sent
+     * @param sink the event sink, or null for none
+     */
+    public void setEventSink(GameEventSink sink) {
+        this.sink = sink == null ? NO_EVENTS : sink;
+    }
+
+    /**
+     * Deal the first pieces and start the first game loop
+     */
+    public void start() {
+        running = true;
+        paused = false;
+        generator.start(grid, seed);
+        currentPiece = generator.next();
+        nextPiece = generator.next();
+        publishStats();
+        sink.piecesChanged(currentPiece, nextPiece);
+        resetLoop();
+        recordHistory();
+    }
+
+    /**
+     * Stop the game without ending it. Nothing further happens until the engine is started again.
+     */
+    public void stop() {
+        running = false;
+    }
+
+    /**
+     * Apply a player's action
+     * @param action the action
+     * @return the outcome, read with ActionResult
+     */
+    public long apply(Action action) {
+        int scoreBefore = score;
+        int livesBefore = lives;
+        lastLines = 0;
+
+        boolean applied;
+        if(action instanceof Action.Place place) {
+            applied = place(place.x(), place.y());
+        } else if(action instanceof Action.Rotate rotate) {
+            applied = running && !paused;
+            rotate(rotate.rotations());
+        } else if(action instanceof Action.Swap) {
+            applied = running && !paused;
+            swap();
+        } else if(action instanceof Action.Undo) {
+            return ActionResult.of(undo(), false, 0, 0, score - scoreBefore);
+        } else {
+            return ActionResult.of(redo(), false, 0, 0, score - scoreBefore);
+        }
+        if(applied) {
+            recordHistory();
+        }
+        return ActionResult.of(applied, livesBefore >= 0 && lives < 0, lastLines, livesBefore - lives,
+            score - scoreBefore);
+    }
+
+    /**
+     * Apply a list of actions in order, stopping early if the game ends
+     * @param actions the actions
+     * @param results filled with the outcome of each action applied, at least as long as actions
+     * @return the number of actions applied or rejected before the game ended
+     */
+    public int applyAll(List<? extends Action> actions, long[] results) {
+        int count = 0;
+        for(Action action : actions) {
+            results[count++] = apply(action);
+            if(!running) break;
+        }
+        return count;
+    }
+
+    /**
+     * Place the current piece centred on the given block, clear any completed lines and move on to the next piece
+     * @param x column
+     * @param y row
+     * @return whether the piece was placed
+     */
+    public boolean place(int x, int y) {
+        if(!running || paused) return false;
+
+        if(!grid.canPlayPiece(currentPiece, x, y)) {
+            sink.placementFailed(currentPiece, x, y);
+            return false;
+        }
+
+        // Place the piece and clear any lines as one change to the board
+        GamePiece placed = currentPiece;
+        grid.beginUpdate();
+        try {
+            grid.playPiece(placed, x, y);
+            sink.piecePlaced(placed, x, y);
+            nextPiece();
+            afterPiece();
+        } finally {
+            grid.commit();
+        }
+        sink.piecesChanged(currentPiece, nextPiece);
+
+        if(canMove()) {
+            resetLoop();
+        } else {
+            loseLife();
+        }
+        return true;
+    }
+
+    /**
+     * Rotate the current piece 90 degrees right a number of times
+     * @param rotations number of rotations
+     */
+    public void rotate(int rotations) {
+        if(!running || paused) return;
+        currentPiece = currentPiece.rotate(rotations);
+        sink.piecesChanged(currentPiece, nextPiece);
+        sink.pieceRotated(currentPiece);
+    }
+
+    /**
+     * Swap the current piece with the next piece
+     */
+    public void swap() {
+        if(!running || paused) return;
+        GamePiece temp = currentPiece;
+        currentPiece = nextPiece;
+        nextPiece = temp;
+        sink.piecesChanged(currentPiece, nextPiece);
+        sink.piecesSwapped(currentPiece, nextPiece);
+    }
+
+    /**
+     * Lose a life if the current game loop has run out
+     * @return whether the loop had run out
+     */
+    public boolean tick() {
+        if(!running || paused || clock.nanoTime() - deadline < 0) return false;
+        loseLife();
+        recordHistory();
+        return true;
+    }
+
+    /**
+     * Pause the game loop, keeping the time left until it is resumed
+     */
+    public void pause() {
+        if(!running || paused) return;
+        pausedRemaining = getRemaining();
+        paused = true;
+    }
+
+    /**
+     * Resume a paused game loop with the time it had left
+     */
+    public void resume() {
+        if(!paused) return;
+        paused = false;
+        deadline = clock.nanoTime() + pausedRemaining;
+    }
+
+    /**
+     * Assign new pieces to the current and next piece
+     */
+    public void nextPiece() {
+        currentPiece = nextPiece;
+        nextPiece = generator.next();
+    }
+
+    /**
+     * Performs tasks that need to be completed after a piece has been placed
+     * Determines if any lines have been cleared
+     * Updates the score, level and multiplier
+     */
+    public void afterPiece() {
+        //Check if any lines have been cleared
+        long clearedRows = grid.getFullRows();
+        long clearedCols = grid.getFullCols();
+        int lines = Long.bitCount(clearedRows) + Long.bitCount(clearedCols);
+        lastLines = lines;
+
+        // Update score, multiplier and level
+        score += scoreFor(lines, grid.countBlocks(clearedRows, clearedCols));
+        multiplier = lines > 0 ? multiplier + 1 : 1;
+        highScore = Math.max(highScore, score);
+        int reached = levelFor(score);
+        if(reached != level) {
+            level = reached;
+            sink.levelUp(level);
+        }
+        publishStats();
+
+        // Clear any completed lines from the board
+        if(lines > 0) {
+            sink.linesCleared(grid, clearedRows, clearedCols);
+            grid.clearLines(clearedRows, clearedCols);
+        }
+    }
+
+    /**
+     * Lose a life and move on to the next piece
+     * Called when the game loop runs out or when neither the current nor the next piece can be placed
+     */
+    public void loseLife() {
+        if(!running) return;
+        lives--;
+        nextPiece();
+        sink.piecesChanged(currentPiece, nextPiece);
+        multiplier = 1;
+        publishStats();
+        sink.lifeLost(lives);
+
+        if(lives < 0) {
+            running = false;
+            sink.gameEnded();
+        } else if(canMove()) {
+            resetLoop();
+        } else {
+            loseLife();
+        }
+    }
+
+    /**
+     * Keep a history of the game so actions can be undone and redone. The current state is recorded straight away
+     * if the game has started.
+     * @param history the history, or null to stop keeping one
+     */
+    public void setHistory(GameHistory history) {
+        this.history = history;
+        recordHistory();
+    }
+
+    /**
+     * Get the history of the game
+     * @return the history, or null if none is kept
+     */
+    public GameHistory getHistory() {
+        return history;
+    }
+
+    /**
+     * Record the state the game is in, if a history is kept
+     */
+    private void recordHistory() {
+        if(history != null && running) {
+            history.record(snapshot());
+        }
+    }
+
+    /**
+     * Step back to the state before the last action
+     * @return whether there was a state to step back to
+     */
+    public boolean undo() {
+        if(history == null || !running || paused || !history.canUndo()) return false;
+        restore(history.undo());
+        return true;
+    }
+
+    /**
+     * Step forward to the state that was undone
+     * @return whether there was a state to step forward to
+     */
+    public boolean redo() {
+        if(history == null || !running || paused || !history.canRedo()) return false;
+        restore(history.redo());
+        return true;
+    }
+
+    /**
+     * Copy the state of the game
+     * @return the snapshot
+     */
+    public GameSnapshot snapshot() {
+        return new GameSnapshot(grid.snapshot(), currentPiece, nextPiece, score, level, lives, multiplier, highScore);
+    }
+
+    /**
+     * Put the game back into a copied state. The grid is restored as one batch, so the board is repainted once, and
+     * a new game loop is started.
+     * @param snapshot the snapshot to restore
+     */
+    public void restore(GameSnapshot snapshot) {
+        snapshot.getGrid().applyTo(grid);
+        currentPiece = snapshot.getCurrentPiece();
+        nextPiece = snapshot.getNextPiece();
+        score = snapshot.getScore();
+        level = snapshot.getLevel();
+        lives = snapshot.getLives();
+        multiplier = snapshot.getMultiplier();
+        highScore = snapshot.getHighScore();
+        lastLines = 0;
+        publishStats();
+        sink.piecesChanged(currentPiece, nextPiece);
+        if(running) {
+            resetLoop();
+        }
+    }
+
+    /**
+     * Start a new game loop, running out after calculateDelay() from now
+     */
+    private void resetLoop() {
+        int delay = calculateDelay();
+        loopLength = delay * 1_000_000L;
+        deadline = clock.nanoTime() + loopLength;
+        sink.loopStarted(deadline, delay);
+    }
+
+    /**
+     * Send the current stats to the sink
+     */
+    private void publishStats() {
+        sink.statsChanged(score, level, lives, multiplier, highScore);
+    }
+
+    /**
+     * Check whether the current or next piece, in any orientation, can be placed anywhere on the board
+     * @return whether the player has a move left
+     */
+    public boolean canMove() {
+        for(int rotation = 0; rotation < GamePiece.ROTATIONS; rotation++) {
+            if(grid.hasLegalPlacement(currentPiece.rotate(rotation))
+                || grid.hasLegalPlacement(nextPiece.rotate(rotation))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Work out what placing a piece would do, without changing the game. The returned evaluation is reused and is
+     * overwritten by the next call, so should be read straight away.
+     * @param piece the piece to place
+     * @param x the column to place it on
+     * @param y the row to place it on
+     * @return the evaluation
+     */
+    public MoveEvaluation evaluate(GamePiece piece, int x, int y) {
+        return evaluate(piece, x, y, preview);
+    }
+
+    /**
+     * Work out what placing a piece would do, without changing the game
+     * @param piece the piece to place
+     * @param x the column to place it on
+     * @param y the row to place it on
+     * @param result the evaluation to fill in
+     * @return the result
+     */
+    public MoveEvaluation evaluate(GamePiece piece, int x, int y, MoveEvaluation result) {
+        result.legal = grid.canPlayPiece(piece, x, y);
+        if(result.legal) {
+            result.clearedRows = grid.getFullRowsWith(piece, x, y);
+            result.clearedCols = grid.getFullColsWith(piece, x, y);
+        } else {
+            result.clearedRows = 0;
+            result.clearedCols = 0;
+        }
+        result.lines = Long.bitCount(result.clearedRows) + Long.bitCount(result.clearedCols);
+        result.blocks = grid.countBlocks(result.clearedRows, result.clearedCols);
+        result.scoreDelta = scoreFor(result.lines, result.blocks);
+        result.level = levelFor(score + result.scoreDelta);
+        return result;
+    }
+
+    /**
+     * Calculate the points for clearing lines at the current multiplier
+     * @param lines The number of lines cleared
+     * @param blocks The number of blocks cleared
+     * @return the points
+     */
+    public int scoreFor(int lines, int blocks) {
+        return multiplier * lines * blocks * 10;
+    }
+
+    /**
+     * Calculate the level reached with a given score
+     * @param score the score
+     * @return the level
+     */
+    public static int levelFor(int score) {
+        return score / 1000;
+    }
+
+    /**
+     * Calculate the amount of time the player has to place a piece
+     * @return The amount of time in milliseconds
+     */
+    public int calculateDelay() {
+        return Math.max(12500 - (500 * level), 2500);
+    }
+
+    /**
+     * Get the clock time when the current game loop runs out
+     * @return the deadline in nanoseconds
+     */
+    public long getDeadline() {
+        return deadline;
+    }
+
+    /**
+     * Get the time left before the current game loop runs out
+     * @return the time left in nanoseconds, never negative
+     */
+    public long getRemaining() {
+        if(paused) return pausedRemaining;
+        return Math.max(deadline - clock.nanoTime(), 0);
+    }
+
+    /**
+     * Get the length of the current game loop
+     * @return the length in nanoseconds
+     */
+    public long getLoopLength() {
+        return loopLength;
+    }
+
+    /**
+     * Check whether the game loop is paused
+     * @return whether the game is paused
+     */
+    public boolean isPaused() {
+        return paused;
+    }
+
+    /**
+     * Set the seed deciding the pieces dealt in the next game started
+     * @param seed the seed
+     */
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * Get the seed deciding the pieces dealt
+     * @return the seed
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Get where new pieces come from
+     * @return the piece generator
+     */
+    public PieceGenerator getGenerator() {
+        return generator;
+    }
+
+    /**
+     * Get the clock the game loop is timed against
+     * @return the clock
+     */
+    public GameClock getClock() {
+        return clock;
+    }
+
+    /**
+     * Check whether the game has started and not yet ended or been stopped
+     * @return whether the game is running
+     */
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Get the piece the player is currently placing
+     * @return the current piece
+     */
+    public GamePiece getCurrentPiece() {
+        return currentPiece;
+    }
+
+    /**
+     * Get the piece that follows the current piece
+     * @return the next piece
+     */
+    public GamePiece getNextPiece() {
+        return nextPiece;
+    }
+
+    /**
+     * Get the grid model inside this game representing the game state of the board
+     * @return game grid model
+     */
+    public Grid getGrid() {
+        return grid;
+    }
+
+    /**
+     * Get the number of columns in this game
+     * @return number of columns
+     */
+    public int getCols() {
+        return cols;
+    }
+
+    /**
+     * Get the number of rows in this game
+     * @return number of rows
+     */
+    public int getRows() {
+        return rows;
+    }
+
+    /**
+     * Get the score
+     * @return the score
+     */
+    public int getScore() {
+        return score;
+    }
+
+    /**
+     * Get the level
+     * @return the level
+     */
+    public int getLevel() {
+        return level;
+    }
+
+    /**
+     * Get the number of lives
+     * @return the number of lives
+     */
+    public int getLives() {
+        return lives;
+    }
+
+    /**
+     * Get the multiplier
+     * @return the multiplier
+     */
+    public int getMultiplier() {
+        return multiplier;
+    }
+
+    /**
+     * Get the high score
+     * @return the high score
+     */
+    public int getHighScore() {
+        return highScore;
+    }
+
+    /**
+     * Set the high score to beat. The score is kept if it is already higher.
+     * @param highScore the high score
+     */
+    public void setHighScore(int highScore) {
+        int updated = Math.max(highScore, score);
+        if(updated != this.highScore) {
+            this.highScore = updated;
+            publishStats();
+        }
+    }
+
+}
@@ -0,0 +1,117 @@
+package uk.ac.soton.comp1206.game;
+
+/**
+ * A bounded history of GameSnapshots for undo and redo.
+ *
+ * Snapshots are held in a ring of fixed capacity, so memory use does not grow with the length of a game: once the
+ * ring is full, recording a new state forgets the oldest one. Stepping back or forward only moves an index, and
+ * recording after stepping back discards the states that could have been redone.
+ */
+public class GameHistory {
+
+    /**
+     * The recorded states, indexed by step modulo capacity
+     */
+    private final GameSnapshot[] states;
+
+    /**
+     * Step of the oldest state still held
+     */
+    private long oldest;
+
+    /**
+     * Step of the state the game is in
+     */
+    private long current = -1;
+
+    /**
+     * Step of the newest state which can be redone to
+     */
+    private long newest = -1;
+
+    /**
+     * Create a new history
+     * @param capacity the number of states to hold, including the current one
+     */
+    public GameHistory(int capacity) {
+        if(capacity < 1) {
+            throw new IllegalArgumentException("History must hold at least one state");
+        }
+        this.states = new GameSnapshot[capacity];
+    }
+
+    /**
+     * Record the state the game has moved into, forgetting anything that could have been redone
+     * @param snapshot the new state
+     */
+    public void record(GameSnapshot snapshot) {
+        current++;
+        newest = current;
+        states[(int) (current % states.length)] = snapshot;
+        oldest = Math.max(oldest, newest - states.length + 1);
+    }
+
+    /**
+     * Step back to the previous state
+     * @return the previous state, or null if there is none
+     */
+    public GameSnapshot undo() {
+        if(!canUndo()) return null;
+        current--;
+        return states[(int) (current % states.length)];
+    }
+
+    /**
+     * Step forward to the state that was undone
+     * @return the state, or null if there is none
+     */
+    public GameSnapshot redo() {
+        if(!canRedo()) return null;
+        current++;
+        return states[(int) (current % states.length)];
+    }
+
+    /**
+     * Check whether there is a state to step back to
+     * @return whether undo() will succeed
+     */
+    public boolean canUndo() {
+        return current > oldest;
+    }
+
+    /**
+     * Check whether there is a state to step forward to
+     * @return whether redo() will succeed
+     */
+    public boolean canRedo() {
+        return current < newest;
+    }
+
+    /**
+     * Look at a recorded state without moving to it, for stepping through a game when debugging
+     * @param stepsBack how many states before the current one, negative to look at states which can be redone
+     * @return the state, or null if it is no longer or not yet held
+     */
+    public GameSnapshot peek(int stepsBack) {
+        long step = current - stepsBack;
+        if(step < oldest || step > newest) return null;
+        return states[(int) (step % states.length)];
+    }
+
+    /**
+     * Get the number of states held
+     * @return number of states
+     */
+    public int size() {
+        return (int) (newest - oldest + 1);
+    }
+
+    /**
+     * Get the number of states the history can hold
+     * @return capacity
+     */
+    public int getCapacity() {
+        return states.length;
+    }
+
+}
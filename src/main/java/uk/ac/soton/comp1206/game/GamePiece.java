@@ -3,20 +3,44 @@ package uk.ac.soton.comp1206.game;
 /**
  * Instances of GamePiece Represents the model of a specific Game Piece with it's block makeup.
  *
- * The GamePiece class also contains a factory for producing a GamePiece of a particular shape, as specified by it's
- * number.
+ * Pieces are defined in a PieceSet resource file and every piece in every orientation is built once, when the set is
+ * loaded, and shared from then on. A GamePiece is immutable: rotating returns the cached instance for the next
+ * orientation rather than changing this one.
+ *
+ * The GamePiece class also contains a factory for producing a GamePiece of a particular shape from the standard set,
+ * as specified by it's number.
  */
 public class GamePiece {
 
+    /**
+     * The number of rotations of each piece
+     */
+    public static final int ROTATIONS = 4;
+
+    /**
+     * The standard set of pieces used by the game
+     */
+    public static final PieceSet STANDARD = PieceSet.load("/pieces/standard.txt");
+
     /**
      * The total number of pieces in this game
      */
-    public static final int PIECES = 15;
+    public static final int PIECES = STANDARD.size();
+
+    /**
+     * The total number of distinct piece orientations in this game
+     */
+    public static final int ORIENTATIONS = STANDARD.getOrientations();
+
+    /**
+     * The set this piece belongs to
+     */
+    private final PieceSet pieceSet;
 
     /**
      * The 2D grid representation of the shape of this piece
      */
-    private int[][] blocks;
+    private final int[][] blocks;
 
     /**
      * The value of this piece
@@ -29,105 +53,57 @@ public class GamePiece {
     private final String name;
 
     /**
-     * Create a new GamePiece of the specified piece number
-     * @param piece piece number
-     * @return the created GamePiece
+     * The piece number
      */
-    public static GamePiece createPiece(int piece) {
-        switch (piece) {
-            //Line
-            case 0 -> {
-                int[][] blocks = {{0, 0, 0}, {1, 1, 1}, {0, 0, 0}};
-                return new GamePiece("Line", blocks, 1);
-            }
+    private final int piece;
 
-            //C
-            case 1 -> {
-                int[][] blocks = {{0, 0, 0}, {1, 1, 1}, {1, 0, 1}};
-                return new GamePiece("C", blocks, 2);
-            }
-
-            //Plus
-            case 2 -> {
-                int[][] blocks = {{0, 1, 0}, {1, 1, 1}, {0, 1, 0}};
-                return new GamePiece("Plus", blocks, 3);
-            }
-
-            //Dot
-            case 3 -> {
-                int[][] blocks = {{0, 0, 0}, {0, 1, 0}, {0, 0, 0}};
-                return new GamePiece("Dot", blocks, 4);
-            }
-
-            //Square
-            case 4 -> {
-                int[][] blocks = {{1, 1, 0}, {1, 1, 0}, {0, 0, 0}};
-                return new GamePiece("Square", blocks, 5);
-            }
-
-            //L
-            case 5 -> {
-                int[][] blocks = {{0, 0, 0}, {1, 1, 1}, {0, 0, 1}};
-                return new GamePiece("L", blocks, 6);
-            }
-
-            //J
-            case 6 -> {
-                int[][] blocks = {{0, 0, 1}, {1, 1, 1}, {0, 0, 0}};
-                return new GamePiece("J", blocks, 7);
-            }
-
-            //S
-            case 7 -> {
-                int[][] blocks = {{0, 0, 0}, {0, 1, 1}, {1, 1, 0}};
-                return new GamePiece("S", blocks, 8);
-            }
+    /**
+     * The number of times this piece has been rotated from its starting orientation
+     */
+    private final int rotation;
 
-            //Z
-            case 8 -> {
-                int[][] blocks = {{1, 1, 0}, {0, 1, 1}, {0, 0, 0}};
-                return new GamePiece("Z", blocks, 9);
-            }
+    /**
+     * The index of this shape among the distinct orientations of the piece set
+     */
+    private final int orientation;
 
-            //T
-            case 9 -> {
-                int[][] blocks = {{1, 0, 0}, {1, 1, 0}, {1, 0, 0}};
-                return new GamePiece("T", blocks, 10);
-            }
+    /**
+     * The width and height of the grid this piece is drawn in
+     */
+    private final int size;
 
-            //X
-            case 10 -> {
-                int[][] blocks = {{1, 0, 1}, {0, 1, 0}, {1, 0, 1}};
-                return new GamePiece("X", blocks, 11);
-            }
+    /**
+     * Occupancy mask of the piece, bit (y * size + x) is set when the block at x, y is filled
+     */
+    private final int mask;
 
-            //Corner
-            case 11 -> {
-                int[][] blocks = {{0, 0, 0}, {1, 1, 0}, {1, 0, 0}};
-                return new GamePiece("Corner", blocks, 12);
-            }
+    /**
+     * Occupancy mask of each row of the piece, bit x is set when the block at x is filled
+     */
+    private final int[] rowMasks;
 
-            //Inverse Corner
-            case 12 -> {
-                int[][] blocks = {{1, 0, 0}, {1, 1, 0}, {0, 0, 0}};
-                return new GamePiece("Inverse Corner", blocks, 13);
-            }
+    /**
+     * Occupancy mask of each column of the piece, bit y is set when the block at y is filled
+     */
+    private final int[] colMasks;
 
-            //Diagonal
-            case 13 -> {
-                int[][] blocks = {{1, 0, 0}, {0, 1, 0}, {0, 0, 1}};
-                return new GamePiece("Diagonal", blocks, 14);
-            }
+    /**
+     * The filled blocks of the piece, each stored as y * size + x
+     */
+    private final int[] cells;
 
-            //Double
-            case 14 -> {
-                int[][] blocks = {{0, 1, 0}, {0, 1, 0}, {0, 0, 0}};
-                return new GamePiece("Double", blocks, 15);
-            }
-        }
+    /**
+     * Bounding box of the filled blocks
+     */
+    private final int minX, minY, maxX, maxY;
 
-        //Not a valid piece number
-        throw new IndexOutOfBoundsException("No such piece: " + piece);
+    /**
+     * Create a new GamePiece of the specified piece number
+     * @param piece piece number
+     * @return the created GamePiece
+     */
+    public static GamePiece createPiece(int piece) {
+        return createPiece(piece, 0);
     }
 
     /**
@@ -137,31 +113,96 @@ public class GamePiece {
      * @return the created GamePiece
      */
     public static GamePiece createPiece(int piece, int rotation) {
-        var newPiece = createPiece(piece);
-
-        newPiece.rotate(rotation);
-        return newPiece;
+        return STANDARD.getPiece(piece, rotation);
     }
 
     /**
-     * Create a new GamePiece with the given name, block makeup and value. Should not be called directly, only via the
-     * factory.
+     * Create a new GamePiece with the given name, piece number, rotation and block makeup. Should not be called
+     * directly, only when a PieceSet is loaded.
+     * @param pieceSet the set the piece belongs to
      * @param name name of the piece
-     * @param blocks block makeup of the piece
-     * @param value the value of this piece
+     * @param piece the piece number
+     * @param rotation the number of times the piece has been rotated
+     * @param orientation the index of this shape among the distinct orientations of the set
+     * @param shape block makeup of the piece, 0 or 1 for each block
      */
-    private GamePiece(String name, int[][] blocks, int value) {
+    GamePiece(PieceSet pieceSet, String name, int piece, int rotation, int orientation, int[][] shape) {
+        this.pieceSet = pieceSet;
         this.name = name;
-        this.blocks = blocks;
-        this.value = value;
+        this.piece = piece;
+        this.rotation = rotation;
+        this.orientation = orientation;
+        this.value = piece + 1;
+        this.size = shape.length;
+        this.blocks = new int[size][size];
+        this.rowMasks = new int[size];
+        this.colMasks = new int[size];
 
         //Use the shape of the block to create a grid with either 0 (empty) or the value of this shape for each block.
-        for(int x = 0; x < blocks.length; x++) {
-            for (int y = 0; y < blocks[x].length; y++) {
-                if(blocks[x][y] == 0) continue;
+        int minX = size, minY = size, maxX = -1, maxY = -1;
+        for(int x = 0; x < size; x++) {
+            for (int y = 0; y < size; y++) {
+                if(shape[x][y] == 0) continue;
                 blocks[x][y] = value;
+                rowMasks[y] |= 1 << x;
+                colMasks[x] |= 1 << y;
+                minX = Math.min(minX, x);
+                minY = Math.min(minY, y);
+                maxX = Math.max(maxX, x);
+                maxY = Math.max(maxY, y);
             }
         }
+        this.mask = maskOf(shape);
+        this.minX = minX;
+        this.minY = minY;
+        this.maxX = maxX;
+        this.maxY = maxY;
+
+        cells = new int[Integer.bitCount(mask)];
+        for(int bits = mask, i = 0; bits != 0; bits &= bits - 1) {
+            cells[i++] = Integer.numberOfTrailingZeros(bits);
+        }
+    }
+
+    /**
+     * Create a rotation of a piece which has the same shape as an earlier rotation, sharing its compiled shape
+     * @param same the earlier rotation with the same shape
+     * @param rotation the number of times this piece has been rotated
+     */
+    GamePiece(GamePiece same, int rotation) {
+        this.pieceSet = same.pieceSet;
+        this.name = same.name;
+        this.piece = same.piece;
+        this.rotation = rotation;
+        this.orientation = same.orientation;
+        this.value = same.value;
+        this.size = same.size;
+        this.blocks = same.blocks;
+        this.rowMasks = same.rowMasks;
+        this.colMasks = same.colMasks;
+        this.mask = same.mask;
+        this.cells = same.cells;
+        this.minX = same.minX;
+        this.minY = same.minY;
+        this.maxX = same.maxX;
+        this.maxY = same.maxY;
+    }
+
+    /**
+     * Get the occupancy mask of a block makeup, bit (y * size + x) is set when the block at x, y is filled
+     * @param shape block makeup
+     * @return occupancy mask
+     */
+    static int maskOf(int[][] shape) {
+        int mask = 0;
+        for(int x = 0; x < shape.length; x++) {
+            for(int y = 0; y < shape.length; y++) {
+                if(shape[x][y] != 0) {
+                    mask |= 1 << (y * shape.length + x);
+                }
+            }
+        }
+        return mask;
     }
 
     /**
@@ -173,7 +214,7 @@ public class GamePiece {
     }
 
     /**
-     * Get the block makeup of this piece
+     * Get the block makeup of this piece. The array is shared and must not be modified.
      * @return 2D grid of the blocks representing the piece shape
      */
     public int[][] getBlocks() {
@@ -181,33 +222,153 @@ public class GamePiece {
     }
 
     /**
-     * Rotate this piece the given number of rotations
-     * @param rotations number of rotations
+     * Get the piece number
+     * @return piece number
      */
-    public void rotate(int rotations) {
-        for(int rotated = 0; rotated < rotations; rotated ++) {
-            rotate();
-        }
+    public int getPiece() {
+        return piece;
+    }
+
+    /**
+     * Get the number of times this piece has been rotated from its starting orientation
+     * @return rotation between 0 and 3
+     */
+    public int getRotation() {
+        return rotation;
+    }
+
+    /**
+     * Get the index of this shape among the distinct orientations of its piece set. Rotations which produce the same
+     * shape share an index.
+     * @return orientation index, below the piece set's getOrientations()
+     */
+    public int getOrientation() {
+        return orientation;
+    }
+
+    /**
+     * Get the set this piece belongs to
+     * @return piece set
+     */
+    public PieceSet getPieceSet() {
+        return pieceSet;
+    }
+
+    /**
+     * Get the width and height of the grid this piece is drawn in
+     * @return size
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Get the offset of the centre block, which is placed on the clicked block
+     * @return centre offset
+     */
+    public int getCentre() {
+        return size / 2;
+    }
+
+    /**
+     * Get the occupancy mask of this piece, bit (y * size + x) is set when the block at x, y is filled
+     * @return occupancy mask
+     */
+    public int getMask() {
+        return mask;
+    }
+
+    /**
+     * Get the occupancy mask of a single row of this piece, bit x is set when the block at x is filled
+     * @param y row
+     * @return row mask
+     */
+    public int getRowMask(int y) {
+        return rowMasks[y];
     }
 
     /**
-     * Rotate this piece exactly once by rotating it's 3x3 grid
+     * Get the occupancy mask of a single column of this piece, bit y is set when the block at y is filled
+     * @param x column
+     * @return column mask
      */
-    public void rotate() {
-        int[][] rotated = new int[blocks.length][blocks[0].length];
-        rotated[2][0] = blocks[0][0];
-        rotated[1][0] = blocks[0][1];
-        rotated[0][0] = blocks[0][2];
+    public int getColMask(int x) {
+        return colMasks[x];
+    }
+
+    /**
+     * Get the number of filled blocks in this piece
+     * @return block count
+     */
+    public int getCellCount() {
+        return cells.length;
+    }
+
+    /**
+     * Get the column of a filled block
+     * @param cell index of the block, below getCellCount()
+     * @return column
+     */
+    public int getCellX(int cell) {
+        return cells[cell] % size;
+    }
+
+    /**
+     * Get the row of a filled block
+     * @param cell index of the block, below getCellCount()
+     * @return row
+     */
+    public int getCellY(int cell) {
+        return cells[cell] / size;
+    }
+
+    /**
+     * Get the leftmost filled column
+     * @return column
+     */
+    public int getMinX() {
+        return minX;
+    }
 
-        rotated[2][1] = blocks[1][0];
-        rotated[1][1] = blocks[1][1];
-        rotated[0][1] = blocks[1][2];
+    /**
+     * Get the topmost filled row
+     * @return row
+     */
+    public int getMinY() {
+        return minY;
+    }
 
-        rotated[2][2] = blocks[2][0];
-        rotated[1][2] = blocks[2][1];
-        rotated[0][2] = blocks[2][2];
+    /**
+     * Get the rightmost filled column
+     * @return column
+     */
+    public int getMaxX() {
+        return maxX;
+    }
 
-        blocks = rotated;
+    /**
+     * Get the bottommost filled row
+     * @return row
+     */
+    public int getMaxY() {
+        return maxY;
+    }
+
+    /**
+     * Get this piece rotated the given number of rotations
+     * @param rotations number of rotations
+     * @return the rotated piece
+     */
+    public GamePiece rotate(int rotations) {
+        return pieceSet.getPiece(piece, rotation + rotations);
+    }
+
+    /**
+     * Get this piece rotated exactly once, 90 degrees right
+     * @return the rotated piece
+     */
+    public GamePiece rotate() {
+        return pieceSet.getPiece(piece, rotation + 1);
     }
 
 
@@ -0,0 +1,119 @@
+package uk.ac.soton.comp1206.game;
+
+/**
+ * An immutable copy of the state of a GameEngine at one point in time: the grid, the current and next piece with
+ * their rotations, and the player's stats. Restoring a snapshot puts the engine back exactly as it was.
+ */
+public final class GameSnapshot {
+
+    /**
+     * The contents of the grid
+     */
+    private final GridSnapshot grid;
+
+    /**
+     * The set the pieces belong to
+     */
+    private final PieceSet pieceSet;
+
+    /**
+     * Piece number and rotation of the current and next piece
+     */
+    private final int currentPiece, currentRotation, nextPiece, nextRotation;
+
+    /**
+     * The player's stats
+     */
+    private final int score, level, lives, multiplier, highScore;
+
+    /**
+     * Copy the state of an engine. Should be created through GameEngine.snapshot()
+     * @param grid the contents of the grid
+     * @param current the current piece
+     * @param next the next piece
+     * @param score the score
+     * @param level the level
+     * @param lives the number of lives
+     * @param multiplier the multiplier
+     * @param highScore the high score
+     */
+    GameSnapshot(GridSnapshot grid, GamePiece current, GamePiece next, int score, int level, int lives, int multiplier,
+                 int highScore) {
+        this.grid = grid;
+        this.pieceSet = current.getPieceSet();
+        this.currentPiece = current.getPiece();
+        this.currentRotation = current.getRotation();
+        this.nextPiece = next.getPiece();
+        this.nextRotation = next.getRotation();
+        this.score = score;
+        this.level = level;
+        this.lives = lives;
+        this.multiplier = multiplier;
+        this.highScore = highScore;
+    }
+
+    /**
+     * Get the contents of the grid
+     * @return grid snapshot
+     */
+    public GridSnapshot getGrid() {
+        return grid;
+    }
+
+    /**
+     * Get the current piece
+     * @return the current piece
+     */
+    public GamePiece getCurrentPiece() {
+        return pieceSet.getPiece(currentPiece, currentRotation);
+    }
+
+    /**
+     * Get the next piece
+     * @return the next piece
+     */
+    public GamePiece getNextPiece() {
+        return pieceSet.getPiece(nextPiece, nextRotation);
+    }
+
+    /**
+     * Get the score
+     * @return the score
+     */
+    public int getScore() {
+        return score;
+    }
+
+    /**
+     * Get the level
+     * @return the level
+     */
+    public int getLevel() {
+        return level;
+    }
+
+    /**
+     * Get the number of lives
+     * @return the number of lives
+     */
+    public int getLives() {
+        return lives;
+    }
+
+    /**
+     * Get the multiplier
+     * @return the multiplier
+     */
+    public int getMultiplier() {
+        return multiplier;
+    }
+
+    /**
+     * Get the high score
+     * @return the high score
+     */
+    public int getHighScore() {
+        return highScore;
+    }
+
+}
@@ -1,5 +1,6 @@
 package uk.ac.soton.comp1206.game;
 
+import java.util.function.Consumer;
 import javafx.beans.property.IntegerProperty;
 import javafx.beans.property.SimpleIntegerProperty;
 import org.apache.logging.log4j.LogManager;
@@ -9,8 +10,16 @@ import org.apache.logging.log4j.Logger;
  * The Grid is a model which holds the state of a game board. It is made up of a set of Integer values arranged in a 2D
  * arrow, with rows and columns.
  *
- * Each value inside the Grid is an IntegerProperty can be bound to enable modification and display of the contents of
- * the grid.
+ * Internally the state is held as primitives: one occupancy word per row (bit x set when column x is filled), one per
+ * column (bit y set when row y is filled) and a packed byte plane of colours. Placement checks are done with shifts and
+ * ANDs on the row words, and full lines are found by comparing row and column words against a full mask.
+ *
+ * For binding, each value can also be viewed as an IntegerProperty. These properties are only created when the UI
+ * first asks for them and are kept in sync with the primitive state. Changes made between beginUpdate() and commit()
+ * are only published to the properties on commit, once per changed block.
+ *
+ * The grid also carries a Zobrist hash of its contents, updated as each block changes, which can be used to compare
+ * or look up boards without comparing every block.
  *
  * The Grid contains functions related to modifying the model, for example, placing a piece inside the grid.
  *
@@ -20,6 +29,11 @@ public class Grid {
 
     private static final Logger logger = LogManager.getLogger(Grid.class);
 
+    /**
+     * The largest number of rows or columns a grid can have, one bit per block in an occupancy word
+     */
+    public static final int MAX_SIZE = Long.SIZE;
+
     /**
      * The number of columns in this grid
      */
@@ -31,9 +45,54 @@ public class Grid {
     private final int rows;
 
     /**
-     * The grid is a 2D arrow with rows and columns of SimpleIntegerProperties.
+     * Mask with a bit set for every column in a row
+     */
+    private final long fullRow;
+
+    /**
+     * Mask with a bit set for every row in a column
+     */
+    private final long fullCol;
+
+    /**
+     * One occupancy word per row, bit x is set when column x is filled
+     */
+    private final long[] occupancy;
+
+    /**
+     * One occupancy word per column, bit y is set when row y is filled
+     */
+    private final long[] columns;
+
+    /**
+     * The colour of every block, indexed by y * cols + x
+     */
+    private final byte[] colours;
+
+    /**
+     * Zobrist hash of the contents of the grid
      */
-    private final SimpleIntegerProperty[][] grid;
+    private long hash;
+
+    /**
+     * Index of legal placements for every orientation of a piece set, created on first use
+     */
+    private PlacementIndex placements;
+
+    /**
+     * Property view of the grid used for binding, created on first use
+     */
+    private SimpleIntegerProperty[][] properties;
+
+    /**
+     * Blocks changed since the outermost beginUpdate(), one word per row
+     */
+    private long[] pending;
+
+    /**
+     * How many updates are currently open
+     */
+    private int updateDepth;
 
     /**
      * Create a new Grid with the specified number of columns and rows and initialise them
@@ -41,18 +100,50 @@ public class Grid {
      * @param rows number of rows
      */
     public Grid(int cols, int rows) {
+        if(cols < 1 || cols > MAX_SIZE || rows < 1 || rows > MAX_SIZE) {
+            throw new IllegalArgumentException("Unsupported grid size: " + cols + " x " + rows);
+        }
         this.cols = cols;
         this.rows = rows;
 
-        //Create the grid itself
-        grid = new SimpleIntegerProperty[cols][rows];
+        fullRow = cols == Long.SIZE ? -1L : (1L << cols) - 1;
+        fullCol = rows == Long.SIZE ? -1L : (1L << rows) - 1;
+        occupancy = new long[rows];
+        columns = new long[cols];
+        colours = new byte[cols * rows];
+    }
 
-        //Add a SimpleIntegerProperty to every block in the grid
-        for(var y = 0; y < rows; y++) {
-            for(var x = 0; x < cols; x++) {
-                grid[x][y] = new SimpleIntegerProperty(0);
+    /**
+     * Shift a piece row mask so bit i lands on column x + i - centre, or return -1 if any block falls off the grid
+     * @param mask the piece row mask
+     * @param x the column the piece is centred on
+     * @param centre the offset of the centre of the piece
+     * @return the shifted mask, or -1 if the row does not fit
+     */
+    private long shiftRow(int mask, int x, int centre) {
+        return shift(mask, x, centre, cols);
+    }
+
+    /**
+     * Shift a piece line mask so bit i lands on position + i - centre, or return -1 if any block falls outside limit
+     * @param mask the piece row or column mask
+     * @param position the row or column the piece is centred on
+     * @param centre the offset of the centre of the piece
+     * @param limit the number of columns or rows
+     * @return the shifted mask, or -1 if the line does not fit
+     */
+    private static long shift(int mask, int position, int centre, int limit) {
+        int shift = position - centre;
+        if(shift + Integer.SIZE - Integer.numberOfLeadingZeros(mask) > limit) {
+            return -1;
+        }
+        if(shift < 0) {
+            if((mask & ((1 << -shift) - 1)) != 0) {
+                return -1;
             }
+            return mask >>> -shift;
         }
+        return (long) mask << shift;
     }
 
     /**
@@ -63,18 +154,16 @@ public class Grid {
      * @return Whether the placement is valid
      */
     public boolean canPlayPiece(GamePiece gamePiece, int x, int y){
-        logger.info(String.valueOf(x), y);
-        int[][] blocks = gamePiece.getBlocks();
-        // Loop through all blocks in the piece and check they are not already filled on the board
-        for(int i = 0; i < blocks.length; i++){
-            for(int j = 0; j < blocks[0].length; j++){
-                if (blocks[i][j] != 0 && this.get(x + i - 1, y + j - 1) != 0){
-                    logger.info("Invalid piece placement requested");
-                    return false;
-                }
-            }
+        int centre = gamePiece.getCentre();
+        // Check every row of the piece against the matching occupancy word
+        for(int j = 0; j < gamePiece.getSize(); j++){
+            int mask = gamePiece.getRowMask(j);
+            if(mask == 0) continue;
+            int row = y + j - centre;
+            if(row < 0 || row >= rows) return false;
+            long shifted = shiftRow(mask, x, centre);
+            if(shifted == -1 || (occupancy[row] & shifted) != 0) return false;
         }
-        logger.info("Valid piece placement requested");
         return true;
     }
 
@@ -85,26 +174,259 @@ public class Grid {
      * @param y the Y coordinate
      */
     public void playPiece(GamePiece gamePiece, int x, int y){
-        int[][] blocks = gamePiece.getBlocks();
-        // Loop through all blocks in the piece and replace the relevant block on the board
-        for(int i = 0; i < blocks.length; i++){
-            for(int j = 0; j < blocks[0].length; j++) {
-                if(blocks[i][j] != 0) {
-                    this.set(x + i - 1, y + j - 1, blocks[i][j]);
-                }
+        int centre = gamePiece.getCentre();
+        int value = gamePiece.getValue();
+        // Fill every block of the piece, one row at a time
+        for(int j = 0; j < gamePiece.getSize(); j++){
+            long shifted = shiftRow(gamePiece.getRowMask(j), x, centre);
+            if(shifted == 0 || shifted == -1) continue;
+            int row = y + j - centre;
+            for(long bits = shifted; bits != 0; bits &= bits - 1) {
+                this.set(Long.numberOfTrailingZeros(bits), row, value);
             }
         }
-        logger.info("Piece placed successfully");
+        logger.trace("Piece placed successfully");
+    }
+
+    /**
+     * Get every position a piece can be placed at. The index is updated as the grid changes, so this is a lookup
+     * rather than a search. The returned array is a live view of the index and must not be modified.
+     * @param gamePiece the piece, in the orientation to look up
+     * @return one word per row, bit x of word y is set when the piece can be centred on x, y
+     */
+    public long[] legalPlacements(GamePiece gamePiece) {
+        return getPlacementIndex(gamePiece.getPieceSet()).get(gamePiece);
+    }
+
+    /**
+     * Check whether a piece can be placed anywhere on the grid
+     * @param gamePiece the piece, in the orientation to check
+     * @return whether there is at least one legal placement
+     */
+    public boolean hasLegalPlacement(GamePiece gamePiece) {
+        return getPlacementIndex(gamePiece.getPieceSet()).count(gamePiece) > 0;
+    }
+
+    /**
+     * Get the placement index for a piece set, creating it the first time it is needed or when a different piece set
+     * is asked for
+     * @param pieceSet the piece set
+     * @return the placement index
+     */
+    private PlacementIndex getPlacementIndex(PieceSet pieceSet) {
+        if(placements == null || placements.getPieceSet() != pieceSet) {
+            placements = new PlacementIndex(this::getRowMask, cols, rows, pieceSet);
+        }
+        return placements;
+    }
+
+    /**
+     * Find every completely filled row
+     * @return mask with bit y set when row y is full
+     */
+    public long getFullRows() {
+        long full = 0;
+        for(int y = 0; y < rows; y++) {
+            if(occupancy[y] == fullRow) {
+                full |= 1L << y;
+            }
+        }
+        return full;
+    }
+
+    /**
+     * Find every completely filled column
+     * @return mask with bit x set when column x is full
+     */
+    public long getFullCols() {
+        long full = 0;
+        for(int x = 0; x < cols; x++) {
+            if(columns[x] == fullCol) {
+                full |= 1L << x;
+            }
+        }
+        return full;
+    }
+
+    /**
+     * Find the rows which would be completely filled if a piece were placed, without placing it. Only rows the piece
+     * touches are checked. The placement is assumed to be legal.
+     * @param gamePiece the piece
+     * @param x the column the piece is centred on
+     * @param y the row the piece is centred on
+     * @return mask with bit y set for every row which would be full
+     */
+    public long getFullRowsWith(GamePiece gamePiece, int x, int y) {
+        int centre = gamePiece.getCentre();
+        long full = 0;
+        for(int j = 0; j < gamePiece.getSize(); j++) {
+            long shifted = shift(gamePiece.getRowMask(j), x, centre, cols);
+            if(shifted == 0 || shifted == -1) continue;
+            int row = y + j - centre;
+            if((occupancy[row] | shifted) == fullRow) {
+                full |= 1L << row;
+            }
+        }
+        return full;
+    }
+
+    /**
+     * Find the columns which would be completely filled if a piece were placed, without placing it. Only columns the
+     * piece touches are checked. The placement is assumed to be legal.
+     * @param gamePiece the piece
+     * @param x the column the piece is centred on
+     * @param y the row the piece is centred on
+     * @return mask with bit x set for every column which would be full
+     */
+    public long getFullColsWith(GamePiece gamePiece, int x, int y) {
+        int centre = gamePiece.getCentre();
+        long full = 0;
+        for(int i = 0; i < gamePiece.getSize(); i++) {
+            long shifted = shift(gamePiece.getColMask(i), y, centre, rows);
+            if(shifted == 0 || shifted == -1) continue;
+            int col = x + i - centre;
+            if((columns[col] | shifted) == fullCol) {
+                full |= 1L << col;
+            }
+        }
+        return full;
+    }
+
+    /**
+     * Count the blocks covered by a set of rows and columns, counting blocks where they cross only once
+     * @param clearedRows mask of rows
+     * @param clearedCols mask of columns
+     * @return number of blocks
+     */
+    public int countBlocks(long clearedRows, long clearedCols) {
+        int fullRows = Long.bitCount(clearedRows);
+        int fullCols = Long.bitCount(clearedCols);
+        return fullRows * cols + fullCols * rows - fullRows * fullCols;
+    }
+
+    /**
+     * Empty every block in the given rows and columns
+     * @param clearedRows mask of rows to clear
+     * @param clearedCols mask of columns to clear
+     */
+    public void clearLines(long clearedRows, long clearedCols) {
+        for(long bits = clearedRows; bits != 0; bits &= bits - 1) {
+            int y = Long.numberOfTrailingZeros(bits);
+            for(long row = occupancy[y]; row != 0; row &= row - 1) {
+                set(Long.numberOfTrailingZeros(row), y, 0);
+            }
+        }
+        for(long bits = clearedCols; bits != 0; bits &= bits - 1) {
+            int x = Long.numberOfTrailingZeros(bits);
+            for(long col = columns[x]; col != 0; col &= col - 1) {
+                set(x, Long.numberOfTrailingZeros(col), 0);
+            }
+        }
+    }
+
+    /**
+     * Get the random key for a block holding a value. Rather than storing a table of keys for every block and value,
+     * the key is generated by mixing the two together (the SplitMix64 finaliser), so any grid size is covered.
+     * @param cell index of the block, y * cols + x
+     * @param value the value of the block
+     * @return the key, or 0 for an empty block
+     */
+    public static long zobristKey(int cell, int value) {
+        if(value == 0) return 0;
+        long key = ((long) cell << Byte.SIZE | value) * 0x9E3779B97F4A7C15L;
+        key = (key ^ (key >>> 30)) * 0xBF58476D1CE4E5B9L;
+        key = (key ^ (key >>> 27)) * 0x94D049BB133111EBL;
+        return key ^ (key >>> 31);
+    }
+
+    /**
+     * Get the Zobrist hash of the grid, which is kept up to date as blocks change. An empty grid hashes to 0.
+     * @return the hash
+     */
+    public long getHash() {
+        return hash;
+    }
+
+    /**
+     * Calculate the Zobrist hash of the grid from scratch. Should always equal getHash()
+     * @return the hash
+     */
+    public long computeHash() {
+        long fresh = 0;
+        for(int cell = 0; cell < colours.length; cell++) {
+            fresh ^= zobristKey(cell, colours[cell] & 0xFF);
+        }
+        return fresh;
+    }
+
+    /**
+     * Take an immutable copy of the contents of this grid, which can be read from any thread
+     * @return the snapshot
+     */
+    public GridSnapshot snapshot() {
+        return new GridSnapshot(cols, rows, occupancy, colours, hash);
+    }
+
+    /**
+     * Start a batch of changes. Until the matching commit(), changes are made to the grid but not published to the
+     * bound properties. Updates can be nested; only the outermost commit() publishes.
+     */
+    public void beginUpdate() {
+        updateDepth++;
+    }
+
+    /**
+     * Finish a batch of changes started with beginUpdate(). When the outermost batch is committed, every block that
+     * changed is published to its property once, with its final value.
+     */
+    public void commit() {
+        if(updateDepth == 0) {
+            throw new IllegalStateException("commit() called without beginUpdate()");
+        }
+        if(--updateDepth > 0) return;
+        assert hash == computeHash() : "Incremental hash does not match the grid contents";
+        if(pending == null) return;
+
+        for(int y = 0; y < rows; y++) {
+            for(long bits = pending[y]; bits != 0; bits &= bits - 1) {
+                int x = Long.numberOfTrailingZeros(bits);
+                properties[x][y].set(get(x, y));
+            }
+            pending[y] = 0;
+        }
+    }
+
+    /**
+     * Apply a batch of changes to the grid and publish them once they are all made
+     * @param changes the changes to make
+     */
+    public void update(Consumer<Grid> changes) {
+        beginUpdate();
+        try {
+            changes.accept(this);
+        } finally {
+            commit();
+        }
     }
 
     /**
      * Get the Integer property contained inside the grid at a given row and column index. Can be used for binding.
+     * The properties are created the first time this is called.
      * @param x column
      * @param y row
      * @return the IntegerProperty at the given x and y in this grid
      */
     public IntegerProperty getGridProperty(int x, int y) {
-        return grid[x][y];
+        if(properties == null) {
+            properties = new SimpleIntegerProperty[cols][rows];
+            pending = new long[rows];
+            for(var row = 0; row < rows; row++) {
+                for(var col = 0; col < cols; col++) {
+                    properties[col][row] = new SimpleIntegerProperty(get(col, row));
+                }
+            }
+        }
+        return properties[x][y];
     }
 
     /**
@@ -114,23 +436,73 @@ public class Grid {
      * @param value the new value
      */
     public void set(int x, int y, int value) {
-        grid[x][y].set(value);
+        int cell = y * cols + x;
+        hash ^= zobristKey(cell, colours[cell] & 0xFF) ^ zobristKey(cell, value & 0xFF);
+        colours[cell] = (byte) value;
+        if(placements != null && (value != 0) != ((occupancy[y] >>> x & 1) != 0)) {
+            placements.invalidate(y);
+        }
+        if(value != 0) {
+            occupancy[y] |= 1L << x;
+            columns[x] |= 1L << y;
+        } else {
+            occupancy[y] &= ~(1L << x);
+            columns[x] &= ~(1L << y);
+        }
+        if(properties != null) {
+            if(updateDepth > 0) {
+                pending[y] |= 1L << x;
+            } else {
+                properties[x][y].set(value);
+            }
+        }
     }
 
     /**
      * Get the value represented at the given x and y index within the grid
      * @param x column
      * @param y row
-     * @return the value
+     * @return the value, or -1 if there is no such index
      */
     public int get(int x, int y) {
-        try {
-            //Get the value held in the property at the x and y index provided
-            return grid[x][y].get();
-        } catch (ArrayIndexOutOfBoundsException e) {
-            //No such index
+        if(x < 0 || x >= cols || y < 0 || y >= rows) {
             return -1;
         }
+        return colours[y * cols + x] & 0xFF;
+    }
+
+    /**
+     * Get the occupancy word of a row, bit x is set when column x is filled
+     * @param y row
+     * @return the occupancy word
+     */
+    public long getRowMask(int y) {
+        return occupancy[y];
+    }
+
+    /**
+     * Get the occupancy word of a column, bit y is set when row y is filled
+     * @param x column
+     * @return the occupancy word
+     */
+    public long getColMask(int x) {
+        return columns[x];
+    }
+
+    /**
+     * Get the mask with a bit set for every column of a row
+     * @return the full row mask
+     */
+    public long getFullRowMask() {
+        return fullRow;
+    }
+
+    /**
+     * Get the mask with a bit set for every row of a column
+     * @return the full column mask
+     */
+    public long getFullColMask() {
+        return fullCol;
     }
 
     /**
@@ -0,0 +1,156 @@
+package uk.ac.soton.comp1206.game;
+
+import java.util.Arrays;
+
+/**
+ * An immutable copy of the contents of a Grid at one point in time.
+ *
+ * The snapshot is a single array of words: the occupancy word of every row, followed by the colour of every block
+ * packed eight to a word. It holds no properties, so it can be handed to and read from any thread.
+ */
+public final class GridSnapshot {
+
+    /**
+     * The number of colours packed into each word
+     */
+    private static final int COLOURS_PER_WORD = Long.BYTES;
+
+    /**
+     * The number of columns in the grid
+     */
+    private final int cols;
+
+    /**
+     * The number of rows in the grid
+     */
+    private final int rows;
+
+    /**
+     * Row occupancy words followed by packed colour words
+     */
+    private final long[] words;
+
+    /**
+     * Zobrist hash of the grid
+     */
+    private final long hash;
+
+    /**
+     * Copy the state of a grid. Should be created through Grid.snapshot()
+     * @param cols number of columns
+     * @param rows number of rows
+     * @param occupancy occupancy word of every row
+     * @param colours colour of every block, indexed by y * cols + x
+     * @param hash Zobrist hash of the grid
+     */
+    GridSnapshot(int cols, int rows, long[] occupancy, byte[] colours, long hash) {
+        this.cols = cols;
+        this.rows = rows;
+        this.hash = hash;
+        this.words = new long[rows + (colours.length + COLOURS_PER_WORD - 1) / COLOURS_PER_WORD];
+
+        System.arraycopy(occupancy, 0, words, 0, rows);
+        for(int cell = 0; cell < colours.length; cell++) {
+            words[rows + cell / COLOURS_PER_WORD] |= (colours[cell] & 0xFFL) << (cell % COLOURS_PER_WORD * Byte.SIZE);
+        }
+    }
+
+    /**
+     * Restore this snapshot into a grid of the same size. Only blocks which differ are updated, and the changes are
+     * published to the grid's properties in a single batch.
+     * @param grid the grid to restore into
+     */
+    public void applyTo(Grid grid) {
+        if(grid.getCols() != cols || grid.getRows() != rows) {
+            throw new IllegalArgumentException("Snapshot of a " + cols + " x " + rows + " grid cannot be applied to a "
+                + grid.getCols() + " x " + grid.getRows() + " grid");
+        }
+        int cells = cols * rows;
+        grid.beginUpdate();
+        try {
+            for(int word = rows; word < words.length; word++) {
+                int first = (word - rows) * COLOURS_PER_WORD;
+                for(int cell = first; cell < Math.min(first + COLOURS_PER_WORD, cells); cell++) {
+                    int value = (int) (words[word] >>> ((cell - first) * Byte.SIZE) & 0xFF);
+                    int x = cell % cols;
+                    int y = cell / cols;
+                    if(grid.get(x, y) != value) {
+                        grid.set(x, y, value);
+                    }
+                }
+            }
+        } finally {
+            grid.commit();
+        }
+    }
+
+    /**
+     * Get the value at the given x and y index
+     * @param x column
+     * @param y row
+     * @return the value, or -1 if there is no such index
+     */
+    public int get(int x, int y) {
+        if(x < 0 || x >= cols || y < 0 || y >= rows) {
+            return -1;
+        }
+        int cell = y * cols + x;
+        return (int) (words[rows + cell / COLOURS_PER_WORD] >>> (cell % COLOURS_PER_WORD * Byte.SIZE) & 0xFF);
+    }
+
+    /**
+     * Get the occupancy word of a row, bit x is set when column x is filled
+     * @param y row
+     * @return the occupancy word
+     */
+    public long getRowMask(int y) {
+        return words[y];
+    }
+
+    /**
+     * Get the Zobrist hash of the grid this was taken from
+     * @return the hash
+     */
+    public long getHash() {
+        return hash;
+    }
+
+    /**
+     * Get the number of columns
+     * @return number of columns
+     */
+    public int getCols() {
+        return cols;
+    }
+
+    /**
+     * Get the number of rows
+     * @return number of rows
+     */
+    public int getRows() {
+        return rows;
+    }
+
+    /**
+     * Compare this snapshot to another
+     * @param obj other object to compare to
+     * @return true if both hold the same grid contents
+     */
+    @Override
+    public boolean equals(Object obj) {
+        if(obj == this) return true;
+        if(!(obj instanceof GridSnapshot)) return false;
+        GridSnapshot other = (GridSnapshot) obj;
+        return hash == other.hash && cols == other.cols && rows == other.rows && Arrays.equals(words, other.words);
+    }
+
+    /**
+     * Calculate a hash code of the grid contents
+     * @return hash code
+     */
+    @Override
+    public int hashCode() {
+        return Long.hashCode(hash);
+    }
+
+}
@@ -0,0 +1,161 @@
+package uk.ac.soton.comp1206.game;
+
+/**
+ * Holds the player's input as timestamped actions until the game is ready to apply them.
+ *
+ * Input handlers offer actions as they arrive and the game processes the whole queue once per frame, in order. Each
+ * action records how long it waited before reaching the engine, and again once the frame showing its result has been
+ * drawn. The queue is a fixed ring, so a burst of key repeats costs no allocation; if more arrive in one frame than
+ * the ring holds, the extras are dropped.
+ */
+public class InputQueue {
+
+    /**
+     * The number of actions held between frames
+     */
+    public static final int CAPACITY = 64;
+
+    /**
+     * The clock input is timestamped against
+     */
+    private final GameClock clock;
+
+    /**
+     * Actions waiting to be applied
+     */
+    private final Action[] actions = new Action[CAPACITY];
+
+    /**
+     * The time each waiting action arrived
+     */
+    private final long[] inputTimes = new long[CAPACITY];
+
+    /**
+     * The arrival time of each action applied but not yet shown
+     */
+    private final long[] unshown = new long[CAPACITY];
+
+    /**
+     * Index of the oldest waiting action
+     */
+    private int head;
+
+    /**
+     * Number of waiting actions
+     */
+    private int size;
+
+    /**
+     * Number of actions applied but not yet shown
+     */
+    private int unshownCount;
+
+    /**
+     * Number of actions dropped because the queue was full
+     */
+    private long dropped;
+
+    /**
+     * Time from input to the action being applied
+     */
+    private final LatencyStats modelLatency = new LatencyStats();
+
+    /**
+     * Time from input to the frame showing the result being drawn
+     */
+    private final LatencyStats frameLatency = new LatencyStats();
+
+    /**
+     * Create a new input queue
+     * @param clock the clock input is timestamped against
+     */
+    public InputQueue(GameClock clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * Add an action to the back of the queue, timestamped now
+     * @param action the action
+     * @return whether there was room for it
+     */
+    public boolean offer(Action action) {
+        if(size == CAPACITY) {
+            dropped++;
+            return false;
+        }
+        int slot = (head + size) % CAPACITY;
+        actions[slot] = action;
+        inputTimes[slot] = clock.nanoTime();
+        size++;
+        return true;
+    }
+
+    /**
+     * Apply every waiting action to an engine, in the order they arrived
+     * @param engine the engine
+     * @return the number of actions applied
+     */
+    public int process(GameEngine engine) {
+        int processed = 0;
+        while(size > 0) {
+            Action action = actions[head];
+            long inputTime = inputTimes[head];
+            actions[head] = null;
+            head = (head + 1) % CAPACITY;
+            size--;
+
+            engine.apply(action);
+            modelLatency.record(clock.nanoTime() - inputTime);
+            if(unshownCount < CAPACITY) {
+                unshown[unshownCount++] = inputTime;
+            }
+            processed++;
+        }
+        return processed;
+    }
+
+    /**
+     * Record that a frame has been drawn, showing the result of every action applied so far
+     */
+    public void frameShown() {
+        if(unshownCount == 0) return;
+        long now = clock.nanoTime();
+        for(int i = 0; i < unshownCount; i++) {
+            frameLatency.record(now - unshown[i]);
+        }
+        unshownCount = 0;
+    }
+
+    /**
+     * Get the number of actions waiting
+     * @return number of actions
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Get the number of actions dropped because the queue was full
+     * @return number of actions
+     */
+    public long getDropped() {
+        return dropped;
+    }
+
+    /**
+     * Get the time from input to actions being applied
+     * @return latency stats
+     */
+    public LatencyStats getModelLatency() {
+        return modelLatency;
+    }
+
+    /**
+     * Get the time from input to the frame showing the result being drawn
+     * @return latency stats
+     */
+    public LatencyStats getFrameLatency() {
+        return frameLatency;
+    }
+
+}
@@ -0,0 +1,94 @@
+package uk.ac.soton.comp1206.game;
+
+/**
+ * Collects latency samples into a fixed set of buckets, so recording a sample never allocates.
+ *
+ * Bucket n holds samples from 2^n up to 2^(n+1) nanoseconds, so percentiles are accurate to within a factor of two,
+ * which is plenty to tell a 2 ms delay from a 20 ms one.
+ */
+public class LatencyStats {
+
+    /**
+     * Number of samples in each power of two bucket
+     */
+    private final long[] buckets = new long[Long.SIZE];
+
+    /**
+     * Number of samples recorded
+     */
+    private long count;
+
+    /**
+     * Sum of every sample
+     */
+    private long total;
+
+    /**
+     * Largest sample
+     */
+    private long max;
+
+    /**
+     * Record a sample
+     * @param nanos the latency in nanoseconds
+     */
+    public void record(long nanos) {
+        if(nanos < 0) nanos = 0;
+        buckets[Long.SIZE - 1 - Long.numberOfLeadingZeros(nanos | 1)]++;
+        count++;
+        total += nanos;
+        max = Math.max(max, nanos);
+    }
+
+    /**
+     * Get the number of samples recorded
+     * @return number of samples
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Get the mean of the samples
+     * @return mean latency in nanoseconds, or 0 with no samples
+     */
+    public long getMean() {
+        return count == 0 ? 0 : total / count;
+    }
+
+    /**
+     * Get the largest sample
+     * @return the largest latency in nanoseconds
+     */
+    public long getMax() {
+        return max;
+    }
+
+    /**
+     * Get an upper bound on a percentile of the samples
+     * @param percentile percentile between 0 and 100
+     * @return the top of the bucket holding the percentile, in nanoseconds
+     */
+    public long getPercentile(double percentile) {
+        long rank = (long) Math.ceil(count * percentile / 100);
+        long seen = 0;
+        for(int bucket = 0; bucket < buckets.length; bucket++) {
+            seen += buckets[bucket];
+            if(seen >= rank && seen > 0) {
+                return Math.min((1L << (bucket + 1)) - 1, max);
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Describe the samples in milliseconds
+     * @return summary of count, mean, 99th percentile and max
+     */
+    @Override
+    public String toString() {
+        return String.format("%d samples, mean %.2f ms, p99 %.2f ms, max %.2f ms", count, getMean() / 1e6,
+            getPercentile(99) / 1e6, max / 1e6);
+    }
+
+}
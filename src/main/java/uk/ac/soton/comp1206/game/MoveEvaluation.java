@@ -0,0 +1,101 @@
+package uk.ac.soton.comp1206.game;
+
+/**
+ * The outcome of placing a piece, worked out without changing the game. Filled in by Game.evaluate.
+ *
+ * A MoveEvaluation is mutable so the same instance can be reused for every evaluation, for example on every mouse move.
+ */
+public class MoveEvaluation {
+
+    /**
+     * Whether the piece can be placed
+     */
+    boolean legal;
+
+    /**
+     * Mask of the rows the move would clear
+     */
+    long clearedRows;
+
+    /**
+     * Mask of the columns the move would clear
+     */
+    long clearedCols;
+
+    /**
+     * Number of lines the move would clear
+     */
+    int lines;
+
+    /**
+     * Number of blocks the move would clear
+     */
+    int blocks;
+
+    /**
+     * Points the move would score
+     */
+    int scoreDelta;
+
+    /**
+     * The level after the move
+     */
+    int level;
+
+    /**
+     * Whether the piece can be placed
+     * @return whether the move is legal
+     */
+    public boolean isLegal() {
+        return legal;
+    }
+
+    /**
+     * Get the rows the move would clear
+     * @return mask with bit y set for every cleared row
+     */
+    public long getClearedRows() {
+        return clearedRows;
+    }
+
+    /**
+     * Get the columns the move would clear
+     * @return mask with bit x set for every cleared column
+     */
+    public long getClearedCols() {
+        return clearedCols;
+    }
+
+    /**
+     * Get the number of lines the move would clear
+     * @return number of lines
+     */
+    public int getLines() {
+        return lines;
+    }
+
+    /**
+     * Get the number of blocks the move would clear
+     * @return number of blocks
+     */
+    public int getBlocks() {
+        return blocks;
+    }
+
+    /**
+     * Get the points the move would score at the current multiplier
+     * @return points
+     */
+    public int getScoreDelta() {
+        return scoreDelta;
+    }
+
+    /**
+     * Get the level the player would be on after the move
+     * @return level
+     */
+    public int getLevel() {
+        return level;
+    }
+
+}
@@ -2,6 +2,7 @@ package uk.ac.soton.comp1206.game;
 
 import java.util.Objects;
 import javafx.application.Platform;
+import uk.ac.soton.comp1206.event.GameEventSink;
 import uk.ac.soton.comp1206.network.Communicator;
 
 /**
@@ -12,9 +13,24 @@ public class MultiplayerGame extends Game{
   private Communicator communicator;
 
   /**
-   * The ID of the next piece to be generated
+   * Deals the pieces sent by the server
    */
-  private int pieceID = 0;
+  private final ServerPieceGenerator pieces;
+
+  /**
+   * Whether the game has been started but is waiting for its first pieces from the server
+   */
+  private boolean waitingForPieces;
+
+  /**
+   * The last score sent to the server
+   */
+  private int sentScore = -1;
+
+  /**
+   * The last number of lives sent to the server
+   */
+  private int sentLives = Integer.MIN_VALUE;
 
   /**
    * Create a new game with the specified rows and columns. Creates a corresponding grid model.
@@ -23,48 +39,82 @@ public class MultiplayerGame extends Game{
    * @param communicator The server event listener from multiplayerScene
    */
   public MultiplayerGame(int cols, int rows, Communicator communicator) {
-    super(cols, rows);
+    this(cols, rows, communicator, new ServerPieceGenerator(communicator));
+  }
+
+  /**
+   * Create a new game dealing the pieces sent by the server
+   * @param cols number of columns
+   * @param rows number of rows
+   * @param communicator The server event listener from multiplayerScene
+   * @param pieces the generator receiving pieces from the server
+   */
+  private MultiplayerGame(int cols, int rows, Communicator communicator, ServerPieceGenerator pieces) {
+    super(cols, rows, pieces);
+    this.pieces = pieces;
     this.communicator = communicator;
     this.communicator.addListener(this::handleCommunications);
-    this.spawnPiece();
+    this.events.subscribe(network);
+    pieces.request();
   }
 
   /**
-   * Handles messages received from the server
-   * @param response message
+   * Start the game once the current and next piece have arrived from the server, so no piece is dealt that the
+   * server did not send
    */
-  private void handleCommunications(String response) {
-    String[] responseSplit = response.split(" ", 2);
-    if (Objects.equals(responseSplit[0], "PIECE")) {
-      Platform.runLater(() -> pieceID = Integer.parseInt(responseSplit[1]));
+  @Override
+  public void initialiseGame() {
+    if (pieces.size() < 2) {
+      waitingForPieces = true;
+      return;
     }
+    waitingForPieces = false;
+    super.initialiseGame();
   }
 
-
   /**
-   * Generate a new game piece based on an ID received from the server from the server
-   * Also handles sending server the number of lives
-   * @return The generated game piece
+   * Stop the game, and do not start it if its pieces arrive afterwards
    */
-  protected GamePiece spawnPiece(){
+  @Override
+  public void stop() {
+    waitingForPieces = false;
+    super.stop();
+  }
 
-    communicator.send("PIECE");
-    GamePiece piece = GamePiece.createPiece(pieceID);
-    communicator.send("LIVES " + lives.get());
-    // If number of lives is 0, exit lobby.
-    if(lives.get() < 0){
-      communicator.send("DIE");
+  /**
+   * Handles messages received from the server
+   * @param response message
+   */
+  private void handleCommunications(String response) {
+    String[] responseSplit = response.split(" ", 2);
+    if (Objects.equals(responseSplit[0], "PIECE")) {
+      Platform.runLater(() -> {
+        pieces.receive(Integer.parseInt(responseSplit[1]));
+        if (waitingForPieces) {
+          initialiseGame();
+        }
+      });
     }
-    return piece;
   }
 
   /**
-   * Send sever current score
-   * @param lines The number of lines cleared
-   * @param blocks The number of blocks cleared
+   * Sends the server the current score and number of lives as soon as they change
    */
-  protected void score(int lines, int blocks){
-    super.score(lines,blocks);
-    communicator.send("SCORE " + score.get());
-  }
+  private final GameEventSink network = new GameEventSink() {
+    @Override
+    public void statsChanged(int score, int level, int lives, int multiplier, int highScore){
+      if(score != sentScore){
+        sentScore = score;
+        communicator.send("SCORE " + score);
+      }
+      if(lives != sentLives){
+        sentLives = lives;
+        communicator.send("LIVES " + lives);
+        // If number of lives is below 0, exit lobby.
+        if(lives < 0){
+          communicator.send("DIE");
+        }
+      }
+    }
+  };
 }
@@ -0,0 +1,23 @@
+package uk.ac.soton.comp1206.game;
+
+/**
+ * Deals the pieces for a GameEngine. Implementations decide which pieces come up and how often; most extend
+ * BufferedPieceGenerator so that dealing a piece is a read from a buffer filled ahead of time. Any randomness should
+ * come from the seed given to start(), so that a game can be reproduced from its seed.
+ */
+public interface PieceGenerator {
+
+    /**
+     * Prepare to deal the pieces for a new game
+     * @param grid the grid the game is played on
+     * @param seed the seed of the game
+     */
+    default void start(Grid grid, long seed) {}
+
+    /**
+     * Deal the next piece
+     * @return the piece
+     */
+    GamePiece next();
+
+}
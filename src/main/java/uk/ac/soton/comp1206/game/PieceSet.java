@@ -0,0 +1,230 @@
+package uk.ac.soton.comp1206.game;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * A set of game pieces loaded from a resource file.
+ *
+ * Each piece in the file is its name followed by a square of rows, 1 for a block and 0 for a gap, up to 5x5. When the
+ * set is loaded every piece is compiled into its four rotations up front. Rotations which produce the same shape (for
+ * example a Line turned twice) share a single orientation, so each distinct shape is only indexed once.
+ */
+public class PieceSet {
+
+    private static final Logger logger = LogManager.getLogger(PieceSet.class);
+
+    /**
+     * The largest width and height of a piece
+     */
+    public static final int MAX_SIZE = 5;
+
+    /**
+     * Every piece in every rotation, indexed by piece number then rotation
+     */
+    private final GamePiece[][] pieces;
+
+    /**
+     * One piece for each distinct orientation, indexed by orientation
+     */
+    private final GamePiece[] orientations;
+
+    /**
+     * The furthest any piece reaches from its centre
+     */
+    private final int maxCentre;
+
+    /**
+     * Load a piece set from a resource file
+     * @param resource path of the resource
+     * @return the piece set
+     */
+    public static PieceSet load(String resource) {
+        var stream = PieceSet.class.getResourceAsStream(resource);
+        if(stream == null) {
+            throw new IllegalArgumentException("No such piece set: " + resource);
+        }
+
+        List<String> names = new ArrayList<>();
+        List<int[][]> shapes = new ArrayList<>();
+        List<String> lines;
+        try(var reader = new BufferedReader(new InputStreamReader(stream, StandardCharsets.UTF_8))) {
+            lines = new ArrayList<>(reader.lines().toList());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read piece set " + resource, e);
+        }
+        // A blank line at the end finishes the last piece
+        lines.add("");
+
+        String name = null;
+        List<String> rows = new ArrayList<>();
+        for(String line : lines) {
+            if(line.startsWith("#")) continue;
+            line = line.strip();
+
+            if(line.matches("[01]+")) {
+                if(name == null) {
+                    throw new IllegalArgumentException("Piece with no name in " + resource);
+                }
+                rows.add(line);
+                continue;
+            }
+            // Any other line finishes the current piece
+            if(name != null) {
+                names.add(name);
+                shapes.add(parseShape(name, rows));
+                rows.clear();
+            }
+            name = line.isEmpty() ? null : line;
+        }
+
+        logger.info("Loaded {} pieces from {}", names.size(), resource);
+        return new PieceSet(names, shapes);
+    }
+
+    /**
+     * Turn the rows of a piece into a block makeup
+     * @param name name of the piece
+     * @param rows rows of 0 and 1, top to bottom
+     * @return block makeup indexed by x then y
+     */
+    private static int[][] parseShape(String name, List<String> rows) {
+        int size = rows.size();
+        if(size % 2 == 0 || size > MAX_SIZE) {
+            throw new IllegalArgumentException("Piece " + name + " must be 1x1, 3x3 or 5x5");
+        }
+        int[][] shape = new int[size][size];
+        boolean empty = true;
+        for(int y = 0; y < size; y++) {
+            String row = rows.get(y);
+            if(row.length() != size) {
+                throw new IllegalArgumentException("Piece " + name + " is not square");
+            }
+            for(int x = 0; x < size; x++) {
+                shape[x][y] = row.charAt(x) - '0';
+                empty &= shape[x][y] == 0;
+            }
+        }
+        if(empty) {
+            throw new IllegalArgumentException("Piece " + name + " has no blocks");
+        }
+        return shape;
+    }
+
+    /**
+     * Compile every piece into its rotations
+     * @param names name of every piece
+     * @param shapes block makeup of every piece before rotation
+     */
+    private PieceSet(List<String> names, List<int[][]> shapes) {
+        pieces = new GamePiece[names.size()][GamePiece.ROTATIONS];
+        List<GamePiece> distinct = new ArrayList<>();
+        int maxCentre = 0;
+
+        for(int piece = 0; piece < pieces.length; piece++) {
+            int[][] shape = shapes.get(piece);
+            for(int rotation = 0; rotation < GamePiece.ROTATIONS; rotation++) {
+                // Reuse an earlier rotation of this piece if it has the same shape
+                GamePiece same = null;
+                for(int earlier = 0; earlier < rotation; earlier++) {
+                    if(GamePiece.maskOf(shape) == pieces[piece][earlier].getMask()) {
+                        same = pieces[piece][earlier];
+                        break;
+                    }
+                }
+                if(same != null) {
+                    pieces[piece][rotation] = new GamePiece(same, rotation);
+                } else {
+                    pieces[piece][rotation] = new GamePiece(this, names.get(piece), piece, rotation, distinct.size(),
+                        shape);
+                    distinct.add(pieces[piece][rotation]);
+                }
+                shape = rotate(shape);
+            }
+            maxCentre = Math.max(maxCentre, pieces[piece][0].getCentre());
+        }
+
+        this.orientations = distinct.toArray(new GamePiece[0]);
+        this.maxCentre = maxCentre;
+    }
+
+    /**
+     * Rotate a block makeup 90 degrees right
+     * @param blocks the block makeup
+     * @return a new, rotated block makeup
+     */
+    private static int[][] rotate(int[][] blocks) {
+        int size = blocks.length;
+        int[][] rotated = new int[size][size];
+        for(int x = 0; x < size; x++) {
+            for(int y = 0; y < size; y++) {
+                rotated[size - 1 - y][x] = blocks[x][y];
+            }
+        }
+        return rotated;
+    }
+
+    /**
+     * Get a piece in a given rotation
+     * @param piece piece number
+     * @param rotation number of times to rotate, any integer
+     * @return the piece
+     */
+    public GamePiece getPiece(int piece, int rotation) {
+        if(piece < 0 || piece >= pieces.length) {
+            //Not a valid piece number
+            throw new IndexOutOfBoundsException("No such piece: " + piece);
+        }
+        return pieces[piece][rotation & (GamePiece.ROTATIONS - 1)];
+    }
+
+    /**
+     * Get the number of pieces in this set
+     * @return number of pieces
+     */
+    public int size() {
+        return pieces.length;
+    }
+
+    /**
+     * Get the number of distinct orientations across every piece in this set
+     * @return number of orientations
+     */
+    public int getOrientations() {
+        return orientations.length;
+    }
+
+    /**
+     * Get a piece in the given distinct orientation
+     * @param orientation orientation index, below getOrientations()
+     * @return the piece
+     */
+    public GamePiece getOrientation(int orientation) {
+        return orientations[orientation];
+    }
+
+    /**
+     * Get the number of blocks in a piece
+     * @param piece piece number
+     * @return block count
+     */
+    public int getCellCount(int piece) {
+        return pieces[piece][0].getCellCount();
+    }
+
+    /**
+     * Get the furthest any piece in this set reaches from its centre block
+     * @return distance in blocks
+     */
+    public int getMaxCentre() {
+        return maxCentre;
+    }
+
+}
@@ -0,0 +1,201 @@
+package uk.ac.soton.comp1206.game;
+
+import java.util.function.IntToLongFunction;
+
+/**
+ * Keeps, for every distinct orientation in a piece set, a mask of the positions on a board where that orientation can
+ * be placed. The board is anything that can give the occupancy word of each row, such as a Grid or an AI board.
+ *
+ * The masks are held one word per row, with bit x set when the piece can be centred on column x of that row. When the
+ * board changes it marks the changed rows as dirty, and only the rows within reach of a dirty row are recalculated the
+ * next time the index is read.
+ */
+public final class PlacementIndex {
+
+    /**
+     * Gives the occupancy word of each row of the board being indexed
+     */
+    private final IntToLongFunction rowMasks;
+
+    /**
+     * The number of rows on the board
+     */
+    private final int rows;
+
+    /**
+     * Occupancy word of a completely filled row
+     */
+    private final long fullRow;
+
+    /**
+     * Mask with a bit set for every row
+     */
+    private final long allRows;
+
+    /**
+     * The piece set whose orientations are indexed
+     */
+    private final PieceSet pieceSet;
+
+    /**
+     * Legal centre positions, indexed by orientation then row
+     */
+    private final long[][] legal;
+
+    /**
+     * Number of legal centre positions for each orientation
+     */
+    private final int[] counts;
+
+    /**
+     * The furthest any piece reaches from its centre
+     */
+    private final int reach;
+
+    /**
+     * Mask of rows whose occupancy has changed since the index was last brought up to date
+     */
+    private long dirtyRows;
+
+    /**
+     * Create a new index over a board, with every row to be calculated when it is first read
+     * @param rowMasks gives the occupancy word of a row, bit x set when column x is filled
+     * @param cols number of columns on the board
+     * @param rows number of rows on the board
+     * @param pieceSet the piece set whose orientations are indexed
+     */
+    public PlacementIndex(IntToLongFunction rowMasks, int cols, int rows, PieceSet pieceSet) {
+        this.rowMasks = rowMasks;
+        this.rows = rows;
+        this.fullRow = cols == Long.SIZE ? -1L : (1L << cols) - 1;
+        this.allRows = rows == Long.SIZE ? -1L : (1L << rows) - 1;
+        this.pieceSet = pieceSet;
+        this.legal = new long[pieceSet.getOrientations()][rows];
+        this.counts = new int[pieceSet.getOrientations()];
+        this.dirtyRows = allRows;
+        this.reach = pieceSet.getMaxCentre();
+    }
+
+    /**
+     * Get the piece set whose orientations are indexed
+     * @return piece set
+     */
+    public PieceSet getPieceSet() {
+        return pieceSet;
+    }
+
+    /**
+     * Mark a row as changed
+     * @param y row
+     */
+    public void invalidate(int y) {
+        dirtyRows |= 1L << y;
+    }
+
+    /**
+     * Mark several rows as changed
+     * @param changedRows mask with bit y set for every changed row
+     */
+    public void invalidateRows(long changedRows) {
+        dirtyRows |= changedRows;
+    }
+
+    /**
+     * Overwrite this index with another over a board of the same size and piece set, for when the board it indexes
+     * has been overwritten with that board
+     * @param other the index to copy
+     */
+    public void copyFrom(PlacementIndex other) {
+        for(int orientation = 0; orientation < legal.length; orientation++) {
+            System.arraycopy(other.legal[orientation], 0, legal[orientation], 0, rows);
+        }
+        System.arraycopy(other.counts, 0, counts, 0, counts.length);
+        dirtyRows = other.dirtyRows;
+    }
+
+    /**
+     * Get the legal centre positions of a piece, one word per row
+     * @param piece the piece
+     * @return the legal positions
+     */
+    public long[] get(GamePiece piece) {
+        refresh();
+        return legal[piece.getOrientation()];
+    }
+
+    /**
+     * Get the number of legal centre positions of a piece
+     * @param piece the piece
+     * @return the number of positions
+     */
+    public int count(GamePiece piece) {
+        refresh();
+        return counts[piece.getOrientation()];
+    }
+
+    /**
+     * Get the number of legal centre positions of every orientation together
+     * @return the number of placements
+     */
+    public int countAll() {
+        refresh();
+        int total = 0;
+        for(int count : counts) {
+            total += count;
+        }
+        return total;
+    }
+
+    /**
+     * Recalculate every row a piece centred on could overlap a dirty row
+     */
+    private void refresh() {
+        if(dirtyRows == 0) return;
+
+        long affected = dirtyRows;
+        for(int distance = 1; distance <= reach; distance++) {
+            affected |= dirtyRows << distance | dirtyRows >>> distance;
+        }
+        affected &= allRows;
+        dirtyRows = 0;
+
+        for(int orientation = 0; orientation < legal.length; orientation++) {
+            GamePiece piece = pieceSet.getOrientation(orientation);
+            long[] rows = legal[orientation];
+            for(long bits = affected; bits != 0; bits &= bits - 1) {
+                int y = Long.numberOfTrailingZeros(bits);
+                long updated = calculateRow(piece, y);
+                counts[orientation] += Long.bitCount(updated) - Long.bitCount(rows[y]);
+                rows[y] = updated;
+            }
+        }
+    }
+
+    /**
+     * Work out every column of a row a piece can be centred on
+     * @param piece the piece
+     * @param y row
+     * @return mask with bit x set when the piece fits centred on x, y
+     */
+    private long calculateRow(GamePiece piece, int y) {
+        int centre = piece.getCentre();
+        long blocked = 0;
+        for(int j = 0; j < piece.getSize(); j++) {
+            int mask = piece.getRowMask(j);
+            if(mask == 0) continue;
+            int row = y + j - centre;
+            if(row < 0 || row >= rows) return 0;
+            long occupied = rowMasks.applyAsLong(row);
+            // A centre x is blocked if the block at x + offset is filled or off the grid
+            for(int bits = mask; bits != 0; bits &= bits - 1) {
+                int offset = Integer.numberOfTrailingZeros(bits) - centre;
+                if(offset >= 0) {
+                    blocked |= occupied >>> offset | ~(fullRow >>> offset);
+                } else {
+                    blocked |= occupied << -offset | (1L << -offset) - 1;
+                }
+            }
+        }
+        return ~blocked & fullRow;
+    }
+}
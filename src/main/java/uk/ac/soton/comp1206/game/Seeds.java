@@ -0,0 +1,45 @@
+package uk.ac.soton.comp1206.game;
+
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.SplittableRandom;
+
+/**
+ * Seeds for games. The seed of a game decides every piece it deals, so two games with the same seed and the same
+ * moves play out identically.
+ */
+public final class Seeds {
+
+    /**
+     * Source of seeds for games that are not given one
+     */
+    private static final SplittableRandom SOURCE = new SplittableRandom();
+
+    private Seeds() {}
+
+    /**
+     * Get a new unpredictable seed
+     * @return the seed
+     */
+    public static synchronized long random() {
+        return SOURCE.nextLong();
+    }
+
+    /**
+     * Get the seed shared by every daily challenge played on a date
+     * @param date the date
+     * @return the seed
+     */
+    public static long daily(LocalDate date) {
+        return new SplittableRandom(date.toEpochDay()).nextLong();
+    }
+
+    /**
+     * Get the seed for today's daily challenge, using the UTC date so every player gets the same one
+     * @return the seed
+     */
+    public static long daily() {
+        return daily(LocalDate.now(ZoneOffset.UTC));
+    }
+
+}
@@ -0,0 +1,145 @@
+package uk.ac.soton.comp1206.game;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import uk.ac.soton.comp1206.network.Communicator;
+
+/**
+ * Deals the pieces sent by the multiplayer server, so that every player in a game gets the same sequence. Pieces are
+ * requested ahead of time and buffered as they arrive, and one more is requested for each server piece dealt, so
+ * dealing never waits on the network once the game has started. The game must not start until at least two pieces
+ * have been received. If the buffer runs dry later on, the last piece received is dealt again, with a warning, and no
+ * replacement is requested for it.
+ */
+public class ServerPieceGenerator extends BufferedPieceGenerator {
+
+    private static final Logger logger = LogManager.getLogger(ServerPieceGenerator.class);
+
+    /**
+     * The number of pieces requested ahead of time when none is given
+     */
+    public static final int DEFAULT_AHEAD = 8;
+
+    /**
+     * The connection to the server
+     */
+    private final Communicator communicator;
+
+    /**
+     * The number of pieces to keep requested or waiting to be dealt
+     */
+    private final int ahead;
+
+    /**
+     * The number of pieces requested but not yet received
+     */
+    private int outstanding;
+
+    /**
+     * Whether any piece has been received
+     */
+    private boolean received;
+
+    /**
+     * The last piece received from the server
+     */
+    private int lastPiece;
+
+    /**
+     * Create a generator keeping DEFAULT_AHEAD pieces requested
+     * @param communicator the connection to the server
+     */
+    public ServerPieceGenerator(Communicator communicator) {
+        this(communicator, DEFAULT_AHEAD);
+    }
+
+    /**
+     * Create a generator. Nothing is requested until request() is called, so the caller can start listening for the
+     * replies first.
+     * @param communicator the connection to the server
+     * @param ahead the number of pieces to keep requested or waiting to be dealt
+     */
+    public ServerPieceGenerator(Communicator communicator, int ahead) {
+        // Room for every piece requested plus any the server sends unasked, so none are dropped
+        super(ahead * 2);
+        this.communicator = communicator;
+        this.ahead = ahead;
+    }
+
+    /**
+     * Request the first pieces from the server. Must be called once, after a listener passing replies to receive()
+     * has been added.
+     */
+    public void request() {
+        for(int i = 0; i < ahead; i++) {
+            requestPiece();
+        }
+    }
+
+    /**
+     * Request one piece from the server
+     */
+    private void requestPiece() {
+        outstanding++;
+        communicator.send("PIECE");
+    }
+
+    /**
+     * Keep the pieces already received, since they were requested for this game. The server decides the pieces, so
+     * the seed is not used.
+     * @param grid the grid the game is played on
+     * @param seed the seed of the game
+     */
+    @Override
+    public void start(Grid grid, long seed) {}
+
+    /**
+     * Add a piece received from the server. Must be called on the same thread the game is played on.
+     * @param piece the piece number
+     */
+    public void receive(int piece) {
+        outstanding = Math.max(outstanding - 1, 0);
+        received = true;
+        lastPiece = piece;
+        if(!push(piece)) {
+            logger.error("Piece buffer full, dropped piece {} from the server", piece);
+        }
+    }
+
+    /**
+     * Deal the next piece, requesting another to replace it if it came from the server
+     * @return the piece
+     */
+    @Override
+    public GamePiece next() {
+        boolean fromServer = size() > 0;
+        GamePiece piece = super.next();
+        if(fromServer) {
+            requestPiece();
+        }
+        return piece;
+    }
+
+    /**
+     * Fall back on the last piece received when none are waiting
+     */
+    @Override
+    protected void refill() {
+        if(!received) {
+            throw new IllegalStateException("No pieces received from the server yet");
+        }
+        logger.warn("No pieces from the server waiting ({} requested), dealing piece {} again", outstanding,
+            lastPiece);
+        push(generate());
+    }
+
+    /**
+     * Repeat the last piece received
+     * @return the piece number
+     */
+    @Override
+    protected int generate() {
+        return lastPiece;
+    }
+
+}
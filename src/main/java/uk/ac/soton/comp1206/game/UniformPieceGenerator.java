@@ -0,0 +1,32 @@
+package uk.ac.soton.comp1206.game;
+
+/**
+ * Deals every piece with equal chance, independently of the pieces before it
+ */
+public class UniformPieceGenerator extends BufferedPieceGenerator {
+
+    /**
+     * Create a generator working out DEFAULT_BATCH pieces at a time
+     */
+    public UniformPieceGenerator() {
+        this(DEFAULT_BATCH);
+    }
+
+    /**
+     * Create a generator
+     * @param batch the number of pieces to work out at a time
+     */
+    public UniformPieceGenerator(int batch) {
+        super(batch);
+    }
+
+    /**
+     * Choose any piece
+     * @return the piece number
+     */
+    @Override
+    protected int generate() {
+        return random.nextInt(GamePiece.PIECES);
+    }
+
+}
@@ -0,0 +1,72 @@
+package uk.ac.soton.comp1206.game;
+
+/**
+ * Deals each piece with a chance proportional to its weight
+ */
+public class WeightedPieceGenerator extends BufferedPieceGenerator {
+
+    /**
+     * Running total of the weights, up to and including each piece
+     */
+    private final double[] cumulative = new double[GamePiece.PIECES];
+
+    /**
+     * Create a generator working out DEFAULT_BATCH pieces at a time
+     * @param weights the weight of each piece, by piece number
+     */
+    public WeightedPieceGenerator(double[] weights) {
+        this(weights, DEFAULT_BATCH);
+    }
+
+    /**
+     * Create a generator
+     * @param weights the weight of each piece, by piece number
+     * @param batch the number of pieces to work out at a time
+     */
+    public WeightedPieceGenerator(double[] weights, int batch) {
+        super(batch);
+        setWeights(weights);
+    }
+
+    /**
+     * Change the weights used for pieces generated from now on
+     * @param weights the weight of each piece, by piece number
+     */
+    protected void setWeights(double[] weights) {
+        if(weights.length != cumulative.length) {
+            throw new IllegalArgumentException("Expected " + cumulative.length + " weights, got " + weights.length);
+        }
+        double total = 0;
+        for(int i = 0; i < weights.length; i++) {
+            if(!(weights[i] >= 0) || Double.isInfinite(weights[i])) {
+                throw new IllegalArgumentException("Invalid weight for piece " + i + ": " + weights[i]);
+            }
+            total += weights[i];
+            cumulative[i] = total;
+        }
+        if(total == 0) {
+            throw new IllegalArgumentException("At least one weight must be positive");
+        }
+    }
+
+    /**
+     * Choose a piece by weight
+     * @return the piece number
+     */
+    @Override
+    protected int generate() {
+        double target = random.nextDouble() * cumulative[cumulative.length - 1];
+        int low = 0;
+        int high = cumulative.length - 1;
+        while(low < high) {
+            int mid = (low + high) >>> 1;
+            if(cumulative[mid] > target) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return low;
+    }
+
+}
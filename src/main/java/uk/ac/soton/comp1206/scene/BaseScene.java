@@ -4,6 +4,7 @@ import javafx.scene.Scene;
 import javafx.scene.paint.Color;
 import uk.ac.soton.comp1206.ui.GamePane;
 import uk.ac.soton.comp1206.ui.GameWindow;
+import uk.ac.soton.comp1206.ui.PowerMode;
 
 /**
  * A Base Scene used in the game. Handles common functionality between all scenes.
@@ -43,6 +44,13 @@ public abstract class BaseScene {
      */
     public abstract void build();
 
+    /**
+     * Handle the window's power mode changing, for example by pausing animations or polling less often while the
+     * window is minimised. Called after initialise() if the scene is loaded in a mode other than ACTIVE.
+     * @param mode the new power mode
+     */
+    public void powerModeChanged(PowerMode mode) {}
+
     /**
      * Create a new JavaFX scene using the root contained within this scene
      * @return JavaFX scene
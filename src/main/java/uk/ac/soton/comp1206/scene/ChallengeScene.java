@@ -1,15 +1,12 @@
 package uk.ac.soton.comp1206.scene;
 
-import java.util.HashSet;
-import javafx.animation.FillTransition;
-import javafx.animation.KeyFrame;
-import javafx.animation.KeyValue;
-import javafx.animation.Timeline;
+import java.util.ArrayList;
+import java.util.List;
+import javafx.application.Platform;
 import javafx.geometry.HPos;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
 import javafx.scene.control.Label;
-import javafx.scene.input.KeyCode;
 import javafx.scene.input.KeyEvent;
 import javafx.scene.input.MouseButton;
 import javafx.scene.input.MouseEvent;
@@ -17,22 +14,25 @@ import javafx.scene.layout.*;
 import javafx.scene.paint.Color;
 import javafx.scene.paint.Paint;
 import javafx.scene.shape.Rectangle;
-import javafx.util.Duration;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import uk.ac.soton.comp1206.ai.AutoPlayer;
+import uk.ac.soton.comp1206.ai.ExpectimaxSearch;
+import uk.ac.soton.comp1206.ai.Move;
+import uk.ac.soton.comp1206.ai.MoveSearch;
 import uk.ac.soton.comp1206.component.GameBlock;
-import uk.ac.soton.comp1206.component.GameBlockCoordinate;
 import uk.ac.soton.comp1206.component.GameBoard;
 import uk.ac.soton.comp1206.component.PieceBoard;
-import uk.ac.soton.comp1206.event.GameEndListener;
-import uk.ac.soton.comp1206.event.GameLoopListener;
-import uk.ac.soton.comp1206.event.LineClearedListener;
-import uk.ac.soton.comp1206.event.NextPieceListener;
+import uk.ac.soton.comp1206.event.GameEventSink;
+import uk.ac.soton.comp1206.event.TimerListener;
+import uk.ac.soton.comp1206.game.Action;
 import uk.ac.soton.comp1206.game.Game;
 import uk.ac.soton.comp1206.game.GamePiece;
 import uk.ac.soton.comp1206.game.Grid;
+import uk.ac.soton.comp1206.game.MoveEvaluation;
 import uk.ac.soton.comp1206.ui.GamePane;
 import uk.ac.soton.comp1206.ui.GameWindow;
+import uk.ac.soton.comp1206.ui.PowerMode;
 
 /**
  * The Single Player challenge scene. Holds the UI for the single player challenge mode in the game.
@@ -41,12 +41,43 @@ public class ChallengeScene extends BaseScene {
 
     private static final Logger logger = LogManager.getLogger(MenuScene.class);
 
+    /**
+     * The board size used when none is chosen
+     */
+    public static final int DEFAULT_SIZE = 5;
+
+    /**
+     * The number of past states the player can undo through
+     */
+    private static final int UNDO_STATES = 100;
+
+    /**
+     * The speeds the autoplay bot can be switched between, in actions per minute
+     */
+    private static final int[] AUTOPLAY_SPEEDS = {120, 600, 3000, AutoPlayer.FASTEST};
+
     /**
      * The associated game
      */
     protected Game game;
-    private int targetXCor = 2;
-    private int targetYCor = 2;
+
+    /**
+     * Number of columns on the game board
+     */
+    protected final int boardCols;
+
+    /**
+     * Number of rows on the game board
+     */
+    protected final int boardRows;
+
+    /**
+     * Whether this is a practice game, where moves can be undone and the score is not recorded
+     */
+    protected final boolean practice;
+
+    private int targetXCor;
+    private int targetYCor;
 
     /**
      * The current game board
@@ -73,6 +104,67 @@ public class ChallengeScene extends BaseScene {
      */
     protected Rectangle timer;
 
+    /**
+     * Colours of the timer, from full to run out
+     */
+    private static final Color[] TIMER_COLOURS = new Color[64];
+
+    static {
+        for (int i = 0; i < TIMER_COLOURS.length; i++) {
+            TIMER_COLOURS[i] = Color.GREEN.interpolate(Color.RED, (double) i / (TIMER_COLOURS.length - 1));
+        }
+    }
+
+    /**
+     * Whether the cursor has moved since the hovered block was last painted
+     */
+    private boolean cursorMoved;
+
+    /**
+     * Called after every pulse has been laid out, just before the frame is drawn
+     */
+    private final Runnable pulseListener = this::pulse;
+
+    /**
+     * Finds the move suggested by a hint and the moves of the autoplay bot, created the first time either is used
+     */
+    private MoveSearch hintSearch;
+
+    /**
+     * Number of the latest hint asked for, so a hint that arrives after the pieces have changed is ignored
+     */
+    private int hintRequest;
+
+    /**
+     * Whether hints and the autoplay bot can be used in this game
+     */
+    protected boolean assistsAllowed;
+
+    /**
+     * Plays the game by itself when switched on, created the first time autoplay is switched on
+     */
+    private AutoPlayer autoPlayer;
+
+    /**
+     * Whether the autoplay bot has played any of this game, in which case the score is not recorded
+     */
+    private boolean botPlayed;
+
+    /**
+     * Index into AUTOPLAY_SPEEDS of the autoplay speed
+     */
+    private int autoplaySpeed;
+
+    /**
+     * Blocks outlined by the current hint
+     */
+    private final List<GameBlock> hintBlocks = new ArrayList<>();
+
+    /**
+     * Label showing the points the hovered placement is worth
+     */
+    protected Label previewLabel;
+
     /**
      * Main game pane
      */
@@ -85,11 +177,13 @@ public class ChallengeScene extends BaseScene {
         logger.info("Starting a new challenge");
 
         //Start new game
-        game = new Game(5, 5);
-        game.setNextPieceListener(nextPieceListener);
-        game.setLineClearedListener(lineClearedListener);
-        game.setGameLoopListener(gameLoopListener);
-        game.setGameEndListener(gameEndListener);
+        game = new Game(boardCols, boardRows);
+        game.getEvents().subscribeCoalesced(gameEvents);
+        game.setTimerListener(timerListener);
+        if (practice) {
+            game.enableUndo(UNDO_STATES);
+        }
+        assistsAllowed = true;
     }
 
     /**
@@ -99,16 +193,58 @@ public class ChallengeScene extends BaseScene {
     public void initialise() {
         logger.info("Initialising Challenge");
         keyboardInputHandler();
+        scene.addPostLayoutPulseListener(pulseListener);
         game.start();
     }
 
+    /**
+     * Pause the game while the player is away and resume it when they return
+     * @param mode the new power mode
+     */
+    @Override
+    public void powerModeChanged(PowerMode mode) {
+        if (mode.isAway()) {
+            game.pause();
+        } else {
+            game.resume();
+        }
+    }
+
     /**
      * Create a new Single Player challenge scene
      *
      * @param gameWindow the Game Window
      */
     public ChallengeScene(GameWindow gameWindow) {
+        this(gameWindow, DEFAULT_SIZE, DEFAULT_SIZE);
+    }
+
+    /**
+     * Create a new Single Player challenge scene with a board of the given size
+     *
+     * @param gameWindow the Game Window
+     * @param cols number of columns on the board
+     * @param rows number of rows on the board
+     */
+    public ChallengeScene(GameWindow gameWindow, int cols, int rows) {
+        this(gameWindow, cols, rows, false);
+    }
+
+    /**
+     * Create a new Single Player challenge scene with a board of the given size, optionally as a practice game
+     *
+     * @param gameWindow the Game Window
+     * @param cols number of columns on the board
+     * @param rows number of rows on the board
+     * @param practice whether moves can be undone, in which case the score is not recorded
+     */
+    public ChallengeScene(GameWindow gameWindow, int cols, int rows, boolean practice) {
         super(gameWindow);
+        this.boardCols = cols;
+        this.boardRows = rows;
+        this.practice = practice;
+        this.targetXCor = cols / 2;
+        this.targetYCor = rows / 2;
         logger.info("Creating Challenge Scene");
     }
 
@@ -202,7 +338,15 @@ public class ChallengeScene extends BaseScene {
         multiplierLabel.getStyleClass().add("multiplier");
         multiplierLabel.textProperty().bind(game.getMultiplier().asString("%dx"));
 
-        var leftPane = new VBox(scoreTextLabel,scoreLabel, highscoreTextLabel, highscoreLabel, multiplierTextLabel, multiplierLabel);
+        Label previewTextLabel = new Label("Placement");
+        previewTextLabel.setPadding(new Insets(20,0,0,0));
+        previewTextLabel.getStyleClass().add("heading");
+
+        previewLabel = new Label("-");
+        previewLabel.getStyleClass().add("level");
+
+        var leftPane = new VBox(scoreTextLabel, scoreLabel, highscoreTextLabel, highscoreLabel, multiplierTextLabel,
+            multiplierLabel, previewTextLabel, previewLabel);
         leftPane.setPadding(new Insets(30,20,30,40));
         leftPane.setAlignment(Pos.CENTER);
         mainPane.setLeft(leftPane);
@@ -244,7 +388,7 @@ public class ChallengeScene extends BaseScene {
      * @param gameBlock the Game Block that was clocked
      */
     private void blockClicked(GameBlock gameBlock) {
-        game.blockClicked(gameBlock);
+        game.queue(new Action.Place(gameBlock.getX(), gameBlock.getY()));
     }
 
     /**
@@ -253,7 +397,7 @@ public class ChallengeScene extends BaseScene {
      */
     private void rightClickGameBoard(MouseEvent e){
         if (e.getButton() == MouseButton.SECONDARY){
-            game.rotateCurrentPiece();
+            game.queue(Action.ROTATE_RIGHT);
         }
     }
 
@@ -263,7 +407,7 @@ public class ChallengeScene extends BaseScene {
      */
     private void leftClickCurrentPieceBoard(MouseEvent e){
         if (e.getButton() == MouseButton.PRIMARY){
-            game.rotateCurrentPiece();
+            game.queue(Action.ROTATE_RIGHT);
         }
     }
 
@@ -273,7 +417,7 @@ public class ChallengeScene extends BaseScene {
      */
     private  void leftClickNextPieceBoard(MouseEvent e){
         if (e.getButton() == MouseButton.PRIMARY){
-            game.swapCurrentPiece();
+            game.queue(Action.SWAP);
         }
     }
 
@@ -289,7 +433,7 @@ public class ChallengeScene extends BaseScene {
                 block.setOnMouseMoved(mouseEvent -> {
                     targetXCor = block.getX();
                     targetYCor = block.getY();
-                    hoverHandler(board.getBlock(targetXCor, targetYCor));
+                    cursorMoved = true;
                 });
                 block.setOnMouseExited(mouseEvent -> {
                     board.getBlock(targetXCor, targetYCor).paint();
@@ -300,83 +444,192 @@ public class ChallengeScene extends BaseScene {
     }
 
     /**
-     * Handles a keypress
+     * Handles a keypress. Game actions are queued and applied on the next frame, and cursor moves are painted once
+     * per frame, so a burst of key repeats does not repaint the board for every key.
      * @param event keypress
      */
     protected void handleKeyPress(KeyEvent event){
-
-        if(event.getCode() == KeyCode.ESCAPE) {
-            logger.info("Escape Pressed");
-            gameWindow.startMenu();
-            escapePressed();
+        switch (event.getCode()) {
+            case ESCAPE -> {
+                logger.info("Escape Pressed");
+                gameWindow.startMenu();
+                escapePressed();
+            }
+            case W, UP -> moveCursor(0, -1);
+            case S, DOWN -> moveCursor(0, 1);
+            case A, LEFT -> moveCursor(-1, 0);
+            case D, RIGHT -> moveCursor(1, 0);
+            case X, ENTER -> game.queue(new Action.Place(targetXCor, targetYCor));
+            case Q, Z, OPEN_BRACKET -> game.queue(Action.ROTATE_LEFT);
+            case E, C, CLOSE_BRACKET -> game.queue(Action.ROTATE_RIGHT);
+            case SPACE, R -> game.queue(Action.SWAP);
+            case U -> game.queue(Action.UNDO);
+            case Y -> game.queue(Action.REDO);
+            case H -> showHint();
+            case B -> toggleAutoplay();
+            case N -> changeAutoplaySpeed();
+            default -> {}
         }
+    }
 
-        if (event.getCode() == KeyCode.W || event.getCode() == KeyCode.UP){
-            if(targetYCor != 0){
-                targetYCor -= 1;
-                hoverHandler(board.getBlock(targetXCor, targetYCor));
-            }
+    /**
+     * Search for the best move on a snapshot of the game, away from the JavaFX thread, and outline it on the board
+     * when the search finishes
+     */
+    private void showHint(){
+        if (!assistsAllowed || game.getCurrentPiece() == null) {
+            return;
         }
-        if (event.getCode() == KeyCode.S || event.getCode() == KeyCode.DOWN){
-            if(targetYCor != 4){
-                targetYCor += 1;
-                hoverHandler(board.getBlock(targetXCor, targetYCor));
+        int request = ++hintRequest;
+        getHintSearch().searchAsync(game.getEngine().snapshot()).thenAccept(move -> Platform.runLater(() -> {
+            if (request == hintRequest) {
+                paintHint(move);
             }
+        }));
+    }
+
+    /**
+     * Get the search used for hints and the autoplay bot, creating it the first time, since its transposition table
+     * takes several megabytes
+     * @return the search
+     */
+    private MoveSearch getHintSearch(){
+        if (hintSearch == null) {
+            hintSearch = new ExpectimaxSearch(ExpectimaxSearch.HINT_BUDGET);
         }
-        if (event.getCode() == KeyCode.A || event.getCode() == KeyCode.LEFT){
-            if(targetXCor != 0){
-                targetXCor -= 1;
-                hoverHandler(board.getBlock(targetXCor, targetYCor));
-            }
+        return hintSearch;
+    }
+
+    /**
+     * Switch the autoplay bot on or off
+     */
+    private void toggleAutoplay(){
+        if (!assistsAllowed) {
+            return;
         }
-        if (event.getCode() == KeyCode.D || event.getCode() == KeyCode.RIGHT){
-            if(targetXCor != 4){
-                targetXCor += 1;
-                hoverHandler(board.getBlock(targetXCor, targetYCor));
-            }
+        if (autoPlayer == null) {
+            autoPlayer = new AutoPlayer(game, getHintSearch(), AUTOPLAY_SPEEDS[autoplaySpeed]);
+            autoPlayer.setActivityListener(gameWindow::keepAwake);
+        }
+        if (autoPlayer.isRunning()) {
+            autoPlayer.stop();
+            previewLabel.setText("Bot off");
+        } else {
+            botPlayed = true;
+            autoPlayer.start();
+            showAutoplaySpeed();
+        }
+    }
+
+    /**
+     * Move the autoplay bot on to the next speed
+     */
+    private void changeAutoplaySpeed(){
+        if (!assistsAllowed) {
+            return;
+        }
+        autoplaySpeed = (autoplaySpeed + 1) % AUTOPLAY_SPEEDS.length;
+        if (autoPlayer != null) {
+            autoPlayer.setApm(AUTOPLAY_SPEEDS[autoplaySpeed]);
         }
-        if (event.getCode() == KeyCode.X || event.getCode() == KeyCode.ENTER){
-            game.blockClicked(board.getBlock(targetXCor, targetYCor));
+        showAutoplaySpeed();
+    }
+
+    /**
+     * Show the speed of the autoplay bot
+     */
+    private void showAutoplaySpeed(){
+        int apm = AUTOPLAY_SPEEDS[autoplaySpeed];
+        previewLabel.setText("Bot " + (apm == AutoPlayer.FASTEST ? "max" : apm + " APM"));
+    }
+
+    /**
+     * Outline the blocks a move would fill and say whether it needs a swap or rotation
+     * @param move the move, or null if there is none
+     */
+    private void paintHint(Move move){
+        clearHint();
+        if (move == null) {
+            previewLabel.setText("No moves");
+            return;
         }
-        if (event.getCode() == KeyCode.Q || event.getCode() == KeyCode.Z || event.getCode() == KeyCode.OPEN_BRACKET){
-            game.rotateCurrentPiece();
-            game.rotateCurrentPiece();
-            game.rotateCurrentPiece();
+        GamePiece piece = move.piece();
+        for (int cell = 0; cell < piece.getCellCount(); cell++) {
+            GameBlock block = board.getBlock(move.x() + piece.getCellX(cell) - piece.getCentre(),
+                move.y() + piece.getCellY(cell) - piece.getCentre());
+            block.hint();
+            hintBlocks.add(block);
         }
-        if (event.getCode() == KeyCode.E || event.getCode() == KeyCode.C || event.getCode() == KeyCode.CLOSE_BRACKET){
-            game.rotateCurrentPiece();
+        String steps = (move.swap() ? " swap" : "") + (move.rotations() != 0 ? " rotate " + move.rotations() : "");
+        previewLabel.setText("Hint" + (steps.isEmpty() ? "" : ":" + steps));
+    }
+
+    /**
+     * Remove the outline of the current hint and ignore any hint still being searched for
+     */
+    private void clearHint(){
+        hintRequest++;
+        for (GameBlock block : hintBlocks) {
+            block.paint();
         }
-        if (event.getCode() == KeyCode.SPACE || event.getCode() == KeyCode.R){
-            game.swapCurrentPiece();
+        hintBlocks.clear();
+        if (hoverBlock != null) {
+            hoverBlock.hover();
         }
     }
 
     /**
-     * Animates the timer
+     * Move the keyboard cursor, staying on the board
+     * @param dx columns to move by
+     * @param dy rows to move by
      */
-    private void timerAnimation(){
+    private void moveCursor(int dx, int dy){
+        targetXCor = Math.max(0, Math.min(boardCols - 1, targetXCor + dx));
+        targetYCor = Math.max(0, Math.min(boardRows - 1, targetYCor + dy));
+        cursorMoved = true;
+    }
+
+    /**
+     * Paint the cursor if it has moved and record that the frame showing the latest input is about to be drawn
+     */
+    private void pulse(){
+        if (cursorMoved) {
+            cursorMoved = false;
+            hoverHandler(board.getBlock(targetXCor, targetYCor));
+        }
+        game.frameShown();
+    }
 
-        // Animate size
-        logger.info("running timer Animation");
-        timer.setScaleX(1);
-        Timeline timeline = new Timeline();
-        timeline.getKeyFrames().add(new KeyFrame(Duration.millis(game.calculateDelay()), new KeyValue(timer.scaleXProperty(), 0)));
-        timeline.playFromStart();
+    /**
+     * Resets the timer to full at the start of a game loop
+     */
+    private void timerReset(){
+        logger.info("Starting new game loop");
+        updateTimer(1, 1);
+    }
 
-        // Animate color
-        timer.setFill(Color.GREEN);
-        FillTransition colorChange = new FillTransition();
-        colorChange.setDuration(Duration.millis((game.calculateDelay())));
-        colorChange.setShape(timer);
-        colorChange.setToValue(Color.RED);
-        colorChange.play();
+    /**
+     * Shrinks the timer and moves its colour from green to red as the game loop runs out
+     * @param remaining the time left in the game loop
+     * @param length the length of the game loop
+     */
+    private void updateTimer(long remaining, long length){
+        double fraction = length > 0 ? (double) remaining / length : 0;
+        timer.setScaleX(fraction);
+        timer.setFill(TIMER_COLOURS[(int) ((1 - fraction) * (TIMER_COLOURS.length - 1))]);
     }
 
     /**
-     * Ends the game
+     * Ends the game, going on to the scores unless it was a practice game or the autoplay bot played any of it
      */
     protected void endGame(){
-        gameWindow.startScores(game.getScore().getValue());
+        if (practice || botPlayed) {
+            logger.info("{} game over, score {} not recorded", practice ? "Practice" : "Autoplay",
+                game.getScore().getValue());
+            gameWindow.startMenu();
+        } else {
+            gameWindow.startScores(game.getScore().getValue());
+        }
         escapePressed();
     }
 
@@ -384,11 +637,15 @@ public class ChallengeScene extends BaseScene {
      * Resets the game state and timer
      */
     public void escapePressed(){
+        scene.removePostLayoutPulseListener(pulseListener);
+        if (autoPlayer != null) {
+            autoPlayer.stop();
+        }
         game.score.set(0);
         game.multiplier.set(1);
         game.lives.set(3);
         game.level.set(0);
-        if(game.timer != null){game.timer.stop();}
+        game.stop();
     }
 
     /**
@@ -401,40 +658,71 @@ public class ChallengeScene extends BaseScene {
         }
         this.hoverBlock = block;
         this.hoverBlock.hover();
+        updatePreview();
+    }
+
+    /**
+     * Show how many points placing the current piece on the hovered block would score
+     */
+    protected void updatePreview(){
+        if (hoverBlock == null || game.getCurrentPiece() == null) {
+            return;
+        }
+        MoveEvaluation move = game.evaluate(game.getCurrentPiece(), hoverBlock.getX(), hoverBlock.getY());
+        if (!move.isLegal()) {
+            previewLabel.setText("-");
+        } else if (move.getLevel() > game.getEngine().getLevel()) {
+            previewLabel.setText("+" + move.getScoreDelta() + " Lv" + move.getLevel());
+        } else {
+            previewLabel.setText("+" + move.getScoreDelta());
+        }
     }
 
     /**
-     * Listens for the next game piece
+     * Listens for game events, once per frame
      */
-    NextPieceListener nextPieceListener = new NextPieceListener() {
+    GameEventSink gameEvents = new GameEventSink() {
         @Override
-        public void nextPiece(GamePiece currentGamePiece, GamePiece nextGamePiece) {
+        public void piecesChanged(GamePiece currentGamePiece, GamePiece nextGamePiece) {
             nextPiece.DisplayPiece(nextGamePiece);
             currentPiece.DisplayPiece(currentGamePiece);
+            clearHint();
+            updatePreview();
         }
-    };
 
-    /**
-     * Listens for when a line is cleared
-     */
-    LineClearedListener lineClearedListener = new LineClearedListener(){
+        @Override
+        public void linesCleared(Grid grid, long clearedRows, long clearedCols) {
+
+            // Fade every block in a cleared row, then the rest of each cleared column
+            for(long rows = clearedRows; rows != 0; rows &= rows - 1){
+                int y = Long.numberOfTrailingZeros(rows);
+                for(int x = 0; x < grid.getCols(); x++){
+                    board.getBlock(x, y).fadeOut();
+                }
+            }
+            for(long cols = clearedCols; cols != 0; cols &= cols - 1){
+                int x = Long.numberOfTrailingZeros(cols);
+                for(int y = 0; y < grid.getRows(); y++){
+                    if((clearedRows >>> y & 1) == 0){
+                        board.getBlock(x, y).fadeOut();
+                    }
+                }
+            }
+        }
 
         @Override
-        public void lineCleared(HashSet<GameBlockCoordinate> blockSet) {
+        public void loopStarted(long deadline, int delay) {
+            timerReset();
+        }
 
-            for(GameBlockCoordinate blockCoordinate : blockSet){
-                board.getBlock(blockCoordinate.getX(), blockCoordinate.getY()).fadeOut();
-            }
+        @Override
+        public void gameEnded() {
+            endGame();
         }
     };
 
     /**
-     * Listens for a new game loop
-     */
-    GameLoopListener gameLoopListener = this::timerAnimation;
-
-    /**
-     * Listens for when the game ends
+     * Listens for the timer moving on each frame
      */
-    GameEndListener gameEndListener = this::endGame;
+    TimerListener timerListener = this::updateTimer;
 }
@@ -72,7 +72,7 @@ public class InstructionsScene extends BaseScene{
 
     var pieces = new FlowPane();
     pieces.setHgap(4);
-    for(int pieceNumber = 0; pieceNumber < 15; pieceNumber++){
+    for(int pieceNumber = 0; pieceNumber < GamePiece.PIECES; pieceNumber++){
       PieceBoard pieceBoard = new PieceBoard(new Grid(3,3), gameWindow.getHeight()/12.5, gameWindow.getHeight()/12.5);
       pieceBoard.DisplayPiece(GamePiece.createPiece(pieceNumber));
       pieces.getChildren().add(pieceBoard);
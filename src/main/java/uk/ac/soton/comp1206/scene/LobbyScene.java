@@ -29,6 +29,7 @@ import org.apache.logging.log4j.Logger;
 import uk.ac.soton.comp1206.network.Communicator;
 import uk.ac.soton.comp1206.ui.GamePane;
 import uk.ac.soton.comp1206.ui.GameWindow;
+import uk.ac.soton.comp1206.ui.PowerMode;
 
 /**
  * Lobby scene with options to create and join games, as well as changing nicknames and sending messages to chat
@@ -268,6 +269,15 @@ public class LobbyScene extends BaseScene{
     timer.play();
   }
 
+  /**
+   * Poll for games less often while the window is not in use
+   * @param mode the new power mode
+   */
+  @Override
+  public void powerModeChanged(PowerMode mode){
+    timer.setRate(mode.getPollingRate());
+  }
+
   /**
    * Listen for the escape key
    * Load main menu if pressed
@@ -15,8 +15,10 @@ import javafx.scene.layout.*;
 import javafx.util.Duration;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import uk.ac.soton.comp1206.game.Grid;
 import uk.ac.soton.comp1206.ui.GamePane;
 import uk.ac.soton.comp1206.ui.GameWindow;
+import uk.ac.soton.comp1206.ui.PowerMode;
 
 /**
  * The main menu of the game. Provides a gateway to the rest of the game.
@@ -25,12 +27,35 @@ public class MenuScene extends BaseScene {
 
     private static final Logger logger = LogManager.getLogger(MenuScene.class);
 
+    /**
+     * The width and height of the board used for single player games
+     */
+    private static int boardSize = ChallengeScene.DEFAULT_SIZE;
+
+    /**
+     * Animation rocking the title back and forth
+     */
+    private RotateTransition animate;
+
     /**
      * Initialise the menu
      */
     @Override
     public void initialise() {}
 
+    /**
+     * Pause the title animation while the window is not in use
+     * @param mode the new power mode
+     */
+    @Override
+    public void powerModeChanged(PowerMode mode) {
+        if(mode == PowerMode.ACTIVE) {
+            animate.play();
+        } else {
+            animate.pause();
+        }
+    }
+
     /**
      * Create a new menu scene
      * @param gameWindow the Game Window this will be displayed in
@@ -66,7 +91,7 @@ public class MenuScene extends BaseScene {
         mainPane.setCenter(imageView);
 
         // Animate title
-        RotateTransition animate = new RotateTransition();
+        animate = new RotateTransition();
         animate.setNode(imageView);
         animate.setFromAngle(-7);
         animate.setToAngle(7);
@@ -80,6 +105,10 @@ public class MenuScene extends BaseScene {
         singlePlayerButton.getStyleClass().add("menuItem");
         singlePlayerButton.setOnAction(this::startGame);
 
+        var practiceButton = new Button("Practice");
+        practiceButton.getStyleClass().add("menuItem");
+        practiceButton.setOnAction(this::startPractice);
+
         var multiPlayerButton = new Button("Multiplayer");
         multiPlayerButton.getStyleClass().add("menuItem");
         multiPlayerButton.setOnAction(this::multiplayerScreen);
@@ -126,12 +155,34 @@ public class MenuScene extends BaseScene {
         var sfxBox = new VBox(5, sfxLabel, sfxSlider);
         sfxBox.setAlignment(Pos.CENTER);
 
+        var boardLabel = new Label();
+        boardLabel.getStyleClass().add("heading");
+        boardLabel.setAlignment(Pos.CENTER);
+
+        var boardSlider = new Slider();
+        boardSlider.setMaxWidth(gameWindow.getWidth() * 0.2);
+        boardSlider.minProperty().set(3);
+        boardSlider.maxProperty().set(Grid.MAX_SIZE);
+        boardSlider.setMajorTickUnit(1);
+        boardSlider.setMinorTickCount(0);
+        boardSlider.setSnapToTicks(true);
+        boardSlider.setValue(boardSize);
+        boardLabel.textProperty().bind(boardSlider.valueProperty().asString("Board: %.0f"));
+        boardSlider.valueProperty().addListener((observableValue, oldValue, newValue) -> {
+            boardSize = (int) Math.round(boardSlider.getValue());
+        });
+
+        var boardBox = new VBox(5, boardLabel, boardSlider);
+        boardBox.setAlignment(Pos.CENTER);
+
         var controlPane = new BorderPane();
         controlPane.setPadding(new Insets(0,20,0,20));
         controlPane.setLeft(musicBox);
+        controlPane.setCenter(boardBox);
         controlPane.setRight(sfxBox);
 
-        var menuButtons = new VBox(singlePlayerButton, multiPlayerButton, instructionButton, exitButton, controlPane);
+        var menuButtons = new VBox(singlePlayerButton, practiceButton, multiPlayerButton, instructionButton, exitButton,
+            controlPane);
         menuButtons.setAlignment(Pos.CENTER);
         menuButtons.setPadding(new Insets(0,0,40,0));
         mainPane.setBottom(menuButtons);
@@ -145,7 +196,15 @@ public class MenuScene extends BaseScene {
      * @param event event
      */
     private void startGame(ActionEvent event) {
-        gameWindow.startChallenge();
+        gameWindow.startChallenge(boardSize, boardSize);
+    }
+
+    /**
+     * Handle when the practice button is pressed
+     * @param event event
+     */
+    private void startPractice(ActionEvent event) {
+        gameWindow.startPractice(boardSize, boardSize);
     }
 
     /**
@@ -33,6 +33,16 @@ public class Multimedia {
    */
   public static double musicVolume = 0.5;
 
+  /**
+   * The music track currently playing, or to play once restored
+   */
+  private static String currentMusic;
+
+  /**
+   * Whether the media players have been released to save power
+   */
+  private static boolean released;
+
 
   /**
    * Play a music track indefinitely
@@ -44,6 +54,10 @@ public class Multimedia {
     if(musicPlayer != null){
       musicPlayer.stop();
     }
+    currentMusic = file;
+    if(released){
+      return;
+    }
     var music = Multimedia.class.getResource("/music/" + file).toExternalForm();
     musicPlayer = new MediaPlayer(new Media(music));
     musicPlayer.setCycleCount(MediaPlayer.INDEFINITE);
@@ -61,6 +75,9 @@ public class Multimedia {
     if(audioPlayer != null){
       audioPlayer.stop();
     }
+    if(released){
+      return;
+    }
     var audio = Objects.requireNonNull(Multimedia.class.getResource("/sounds/" + file)).toExternalForm();
     audioPlayer = new MediaPlayer(new Media(audio));
     audioPlayer.setVolume(audioVolume);
@@ -71,7 +88,42 @@ public class Multimedia {
    * Update the volume of currently playing music
    */
   public static void changeMusicVolume(){
-    musicPlayer.setVolume(musicVolume);
+    if(musicPlayer != null){
+      musicPlayer.setVolume(musicVolume);
+    }
+  }
+
+  /**
+   * Stop and dispose of both media players. Nothing is played until restore() is called.
+   */
+  public static void release(){
+    if(released){
+      return;
+    }
+    logger.info("Releasing media players");
+    released = true;
+    if(musicPlayer != null){
+      musicPlayer.dispose();
+      musicPlayer = null;
+    }
+    if(audioPlayer != null){
+      audioPlayer.dispose();
+      audioPlayer = null;
+    }
+  }
+
+  /**
+   * Allow media to be played again after release(), restarting the current music track
+   */
+  public static void restore(){
+    if(!released){
+      return;
+    }
+    logger.info("Restoring media players");
+    released = false;
+    if(currentMusic != null){
+      new Multimedia().playMusic(currentMusic);
+    }
   }
 
-}
\ No newline at end of file
+}
\ No newline at end of file
@@ -24,6 +24,7 @@ import uk.ac.soton.comp1206.component.GameBlock;
 import uk.ac.soton.comp1206.game.MultiplayerGame;
 import uk.ac.soton.comp1206.network.Communicator;
 import uk.ac.soton.comp1206.ui.GameWindow;
+import uk.ac.soton.comp1206.ui.PowerMode;
 import javafx.util.Pair;
 
 /**
@@ -93,11 +94,9 @@ public class MultiplayerScene extends ChallengeScene{
    * Setup game by creating new multiplayer game object and assigning listeners
    */
   public void setupGame(){
-    game = new MultiplayerGame(5, 5, communicator);
-    game.setNextPieceListener(nextPieceListener);
-    game.setLineClearedListener(lineClearedListener);
-    game.setGameLoopListener(gameLoopListener);
-    game.setGameEndListener(gameEndListener);
+    game = new MultiplayerGame(boardCols, boardRows, communicator);
+    game.getEvents().subscribeCoalesced(gameEvents);
+    game.setTimerListener(timerListener);
   }
 
   /**
@@ -136,6 +135,16 @@ public class MultiplayerScene extends ChallengeScene{
     super.mainPane.setLeft(multiplayerComponents);
   }
 
+  /**
+   * Poll for the leaderboard less often while the window is not in use. Unlike single player, a multiplayer game
+   * carries on while the player is away.
+   * @param mode the new power mode
+   */
+  @Override
+  public void powerModeChanged(PowerMode mode) {
+    timer.setRate(mode.getPollingRate());
+  }
+
   /**
    * Listen for the escape key
    * Load main menu if pressed
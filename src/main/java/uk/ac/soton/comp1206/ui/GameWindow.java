@@ -1,14 +1,19 @@
 package uk.ac.soton.comp1206.ui;
 
 import java.util.ArrayList;
+import javafx.animation.Animation;
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
 import javafx.application.Platform;
 import javafx.beans.property.SimpleIntegerProperty;
 import javafx.beans.property.SimpleStringProperty;
 import javafx.scene.Scene;
+import javafx.scene.input.InputEvent;
 import javafx.scene.layout.Pane;
 import javafx.scene.paint.Color;
 import javafx.scene.text.Font;
 import javafx.stage.Stage;
+import javafx.util.Duration;
 import javafx.util.Pair;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -35,6 +40,21 @@ public class GameWindow {
     private BaseScene currentScene;
     private Scene scene;
 
+    /**
+     * How long without input before the window counts as idle
+     */
+    private static final long IDLE_AFTER = 60_000_000_000L;
+
+    /**
+     * The current power mode
+     */
+    private PowerMode powerMode = PowerMode.ACTIVE;
+
+    /**
+     * The time of the last keyboard or mouse input, from System.nanoTime()
+     */
+    private long lastInput = System.nanoTime();
+
     final Communicator communicator;
 
     /**
@@ -89,6 +109,20 @@ public class GameWindow {
      */
     public void startChallenge() { loadScene(new ChallengeScene(this)); }
 
+    /**
+     * Display the single player challenge on a board of the given size
+     * @param cols number of columns
+     * @param rows number of rows
+     */
+    public void startChallenge(int cols, int rows) { loadScene(new ChallengeScene(this, cols, rows)); }
+
+    /**
+     * Display a practice game on a board of the given size, where moves can be undone and the score is not recorded
+     * @param cols number of columns
+     * @param rows number of rows
+     */
+    public void startPractice(int cols, int rows) { loadScene(new ChallengeScene(this, cols, rows, true)); }
+
     /**
      * Display the multiplayer lobby
      */
@@ -125,6 +159,62 @@ public class GameWindow {
         stage.setMinWidth(width);
         stage.setMinHeight(height + 20);
         stage.setOnCloseRequest(ev -> App.getInstance().shutdown());
+
+        // Watch for the window being minimised, losing focus or left idle
+        stage.iconifiedProperty().addListener((observable, oldValue, newValue) -> updatePowerMode());
+        stage.focusedProperty().addListener((observable, oldValue, newValue) -> updatePowerMode());
+        stage.addEventFilter(InputEvent.ANY, event -> keepAwake());
+        var idleCheck = new Timeline(new KeyFrame(Duration.seconds(5), event -> updatePowerMode()));
+        idleCheck.setCycleCount(Animation.INDEFINITE);
+        idleCheck.play();
+    }
+
+    /**
+     * Work out the power mode from the state of the window, and tell the media players and current scene if it has
+     * changed
+     */
+    private void updatePowerMode() {
+        PowerMode mode;
+        if(stage.isIconified()) {
+            mode = PowerMode.SUSPENDED;
+        } else if(System.nanoTime() - lastInput > IDLE_AFTER) {
+            mode = PowerMode.IDLE;
+        } else if(!stage.isFocused()) {
+            mode = PowerMode.BACKGROUND;
+        } else {
+            mode = PowerMode.ACTIVE;
+        }
+        if(mode == powerMode) return;
+
+        logger.info("Power mode changed from {} to {}", powerMode, mode);
+        powerMode = mode;
+        if(mode.isAway()) {
+            Multimedia.release();
+        } else {
+            Multimedia.restore();
+        }
+        if(currentScene != null) {
+            currentScene.powerModeChanged(mode);
+        }
+    }
+
+    /**
+     * Count as input, so the window does not go idle. Used for activity which produces no input events, such as the
+     * autoplay bot.
+     */
+    public void keepAwake() {
+        lastInput = System.nanoTime();
+        if(powerMode == PowerMode.IDLE) {
+            updatePowerMode();
+        }
+    }
+
+    /**
+     * Get the current power mode
+     * @return power mode
+     */
+    public PowerMode getPowerMode() {
+        return powerMode;
     }
 
     /**
@@ -141,8 +231,13 @@ public class GameWindow {
         scene = newScene.setScene();
         stage.setScene(scene);
 
-        //Initialise the scene when ready
-        Platform.runLater(() -> currentScene.initialise());
+        //Initialise the scene when ready, letting it know if the window is not in use
+        Platform.runLater(() -> {
+            currentScene.initialise();
+            if(powerMode != PowerMode.ACTIVE) {
+                currentScene.powerModeChanged(powerMode);
+            }
+        });
     }
 
     /**
@@ -0,0 +1,48 @@
+package uk.ac.soton.comp1206.ui;
+
+/**
+ * How much work the game should be doing, depending on whether the player can see and is using the window
+ */
+public enum PowerMode {
+
+    /**
+     * The window is focused and in use
+     */
+    ACTIVE,
+
+    /**
+     * The window is visible but another window has focus
+     */
+    BACKGROUND,
+
+    /**
+     * The window is visible but there has been no input for a while
+     */
+    IDLE,
+
+    /**
+     * The window is minimised
+     */
+    SUSPENDED;
+
+    /**
+     * Check whether media players should be released and single player games paused
+     * @return whether the player is away from the game
+     */
+    public boolean isAway() {
+        return this == IDLE || this == SUSPENDED;
+    }
+
+    /**
+     * Get how fast regular polling should run compared to normal
+     * @return rate, 1 for normal speed
+     */
+    public double getPollingRate() {
+        return switch (this) {
+            case ACTIVE -> 1;
+            case BACKGROUND -> 0.25;
+            case IDLE, SUSPENDED -> 0.1;
+        };
+    }
+
+}